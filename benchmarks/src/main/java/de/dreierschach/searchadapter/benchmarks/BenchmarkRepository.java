@@ -0,0 +1,44 @@
+package de.dreierschach.searchadapter.benchmarks;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory repository for benchmarks, that supports paged and iterative searching. Every item has a value between 0 and
+ * 999, so that a filter on the value matches a configurable share of the items.
+ */
+public class BenchmarkRepository {
+    private final List<Item> items;
+
+    public BenchmarkRepository(int size) {
+        // spread the values evenly, so that every range of values matches the same share of every page
+        this.items = IntStream.range(0, size).mapToObj(id -> new Item(id, "item-" + id, (int) (id * 7919L % 1000))).toList();
+    }
+
+    public List<Item> search(long page, long pageSize) {
+        return range(page * pageSize, pageSize);
+    }
+
+    public List<Item> scroll(Long scrollId, long pageSize) {
+        return range(scrollId != null ? scrollId : 0, pageSize);
+    }
+
+    private List<Item> range(long from, long pageSize) {
+        var start = (int) Math.min(items.size(), from);
+        var end = (int) Math.min(items.size(), from + pageSize);
+        return items.subList(start, end);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    // -------- types
+
+    public record Item(int id, String name, int value) {
+    }
+
+    // matches the items with a value less than the given one
+    public record ValueFilter(int valueBelow) {
+    }
+}
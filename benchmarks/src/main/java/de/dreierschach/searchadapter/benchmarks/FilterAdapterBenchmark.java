@@ -0,0 +1,118 @@
+package de.dreierschach.searchadapter.benchmarks;
+
+import de.dreierschach.searchadapter.benchmarks.BenchmarkRepository.Item;
+import de.dreierschach.searchadapter.benchmarks.BenchmarkRepository.ValueFilter;
+import de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SearchWithFilterAdapter#findAndFilter(SearchWithFilterAdapter.PagedSearchWithFilter)} by repository size,
+ * selectivity of the filter, page-size, cache size, cold or warm caches and sequential or random access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterAdapterBenchmark {
+
+    @Param({"10000", "100000"})
+    int repositorySize;
+
+    // the share of items matching the filter in per mille
+    @Param({"10", "100", "500"})
+    int selectivity;
+
+    @Param({"25", "100"})
+    int pageSize;
+
+    // the size of the input cache, 0 disables caching
+    @Param({"0", "100", "1000"})
+    int cacheSize;
+
+    @Param({"COLD", "WARM"})
+    Caches caches;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    Access access;
+
+    private BenchmarkRepository repository;
+    private SearchWithFilterAdapter<Item, String, ValueFilter> adapter;
+    private ValueFilter filter;
+    private long pages;
+    private long page;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void createRepository() {
+        repository = new BenchmarkRepository(repositorySize);
+        filter = new ValueFilter(selectivity);
+        pages = Math.max(1, (long) repositorySize * selectivity / 1000 / pageSize);
+        adapter = createAdapter();
+        if (caches == Caches.WARM) {
+            for (long p = 0; p < pages; p++) {
+                adapter.findAndFilter(new SearchWithFilterAdapter.PagedSearchWithFilter<>("", filter, p, pageSize));
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCaches() {
+        if (caches == Caches.COLD) {
+            adapter = createAdapter();
+        }
+        page = 0;
+    }
+
+    @Benchmark
+    public List<Item> findAndFilter() {
+        var requestedPage = access == Access.SEQUENTIAL ? page++ % pages : random.nextLong(pages);
+        return adapter.findAndFilter(new SearchWithFilterAdapter.PagedSearchWithFilter<>("", filter, requestedPage, pageSize)).items();
+    }
+
+    private SearchWithFilterAdapter<Item, String, ValueFilter> createAdapter() {
+        var result = new SearchWithFilterAdapter<Item, String, ValueFilter>() {
+            @Override
+            protected PagedSearchResult<Item> find(PagedSearch<String> search) {
+                return new PagedSearchResult<>(repository.search(search.page(), search.pageSize()), search.page(), search.pageSize());
+            }
+
+            @Override
+            protected boolean test(Item item, ValueFilter customFilter) {
+                return item.value() < customFilter.valueBelow();
+            }
+        };
+        if (cacheSize > 0) {
+            result.enableCache(cacheSize, cacheSize * 10L);
+        }
+        return result;
+    }
+
+    public enum Caches {
+        // the caches are filled while measuring, beginning empty in every iteration
+        COLD,
+        // all pages were requested once before measuring
+        WARM
+    }
+
+    public enum Access {
+        SEQUENTIAL,
+        RANDOM
+    }
+}
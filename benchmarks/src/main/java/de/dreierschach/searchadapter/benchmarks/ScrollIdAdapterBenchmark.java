@@ -0,0 +1,98 @@
+package de.dreierschach.searchadapter.benchmarks;
+
+import de.dreierschach.searchadapter.benchmarks.BenchmarkRepository.Item;
+import de.dreierschach.searchadapter.benchmarks.FilterAdapterBenchmark.Access;
+import de.dreierschach.searchadapter.benchmarks.FilterAdapterBenchmark.Caches;
+import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SearchWithScrollIdAdapter#findAndFilter(SearchWithScrollIdAdapter.PagedSearch)} by repository size,
+ * page-size, cache size, cold or warm caches and sequential or random access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScrollIdAdapterBenchmark {
+
+    @Param({"10000", "100000"})
+    int repositorySize;
+
+    @Param({"25", "100"})
+    int pageSize;
+
+    // the size of the input cache, 0 disables caching
+    @Param({"0", "100", "1000"})
+    int cacheSize;
+
+    @Param({"COLD", "WARM"})
+    Caches caches;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    Access access;
+
+    private BenchmarkRepository repository;
+    private SearchWithScrollIdAdapter<Item, String, Long> adapter;
+    private long pages;
+    private long page;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void createRepository() {
+        repository = new BenchmarkRepository(repositorySize);
+        pages = Math.max(1, repositorySize / pageSize);
+        adapter = createAdapter();
+        if (caches == Caches.WARM) {
+            for (long p = 0; p < pages; p++) {
+                adapter.findAndFilter(new SearchWithScrollIdAdapter.PagedSearch<>("", p, pageSize));
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCaches() {
+        if (caches == Caches.COLD) {
+            adapter = createAdapter();
+        }
+        page = 0;
+    }
+
+    @Benchmark
+    public List<Item> findAndFilter() {
+        var requestedPage = access == Access.SEQUENTIAL ? page++ % pages : random.nextLong(pages);
+        return adapter.findAndFilter(new SearchWithScrollIdAdapter.PagedSearch<>("", requestedPage, pageSize)).items();
+    }
+
+    private SearchWithScrollIdAdapter<Item, String, Long> createAdapter() {
+        var result = new SearchWithScrollIdAdapter<Item, String, Long>() {
+            @Override
+            protected IterativeSearchResult<Item, Long> find(IterativeSearch<String, Long> search) {
+                var items = repository.scroll(search.scrollId(), search.pageSize());
+                var nextScrollId = (search.scrollId() != null ? search.scrollId() : 0) + items.size();
+                return new IterativeSearchResult<>(items, items.isEmpty() ? null : nextScrollId, search.pageSize());
+            }
+        };
+        if (cacheSize > 0) {
+            result.enableCache(cacheSize, cacheSize * 10L);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package de.dreierschach.searchadapter.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Persists {@link Checkpoints} in a memory-mapped file, so that they survive a restart.
+ * <p>
+ * The file carries a version given by the application, e.g. a hash of the repository's schema or data-generation: checkpoints
+ * written with another version, or by another format, are discarded when loading.
+ *
+ * @param <K> the search-key type
+ * @param <C> the checkpoint type
+ */
+public class CheckpointFile<K, C> {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointFile.class);
+
+    // identifies a checkpoint file and its format
+    private static final int MAGIC = 0x43484b50;
+    private static final int FORMAT = 1;
+
+    private final Path path;
+    private final long version;
+    private final ItemCodec<K> keyCodec;
+    private final ItemCodec<C> checkpointCodec;
+
+    /**
+     * @param path            the file
+     * @param version         the version of the checkpoints
+     * @param keyCodec        the codec of the search-keys
+     * @param checkpointCodec the codec of the checkpoints
+     */
+    public CheckpointFile(Path path, long version, ItemCodec<K> keyCodec, ItemCodec<C> checkpointCodec) {
+        this.path = path;
+        this.version = version;
+        this.keyCodec = keyCodec;
+        this.checkpointCodec = checkpointCodec;
+    }
+
+    /**
+     * write all checkpoints, replacing the file atomically
+     *
+     * @param checkpoints the checkpoints
+     * @return the number of written checkpoints
+     */
+    public int save(Checkpoints<K, C> checkpoints) {
+        var entries = new ByteArrayOutputStream();
+        var count = new int[1];
+        try (var out = new DataOutputStream(entries)) {
+            checkpoints.forEach((key, position, checkpoint) -> {
+                try {
+                    keyCodec.encode(key, out);
+                    out.writeLong(position);
+                    checkpointCodec.encode(checkpoint, out);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var header = ByteBuffer.allocate(20).putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(count[0]).flip();
+        try {
+            var temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try (var channel = FileChannel.open(temp, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+                var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, header.remaining() + entries.size());
+                buffer.put(header).put(entries.toByteArray());
+                buffer.force();
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count[0];
+    }
+
+    /**
+     * read all checkpoints, if the file exists and has the same version
+     *
+     * @param consumer the consumer of the checkpoints
+     * @return the number of read checkpoints
+     */
+    public int load(Checkpoints.Consumer<? super K, ? super C> consumer) {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+        try (var channel = FileChannel.open(path, READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT || buffer.getLong() != version) {
+                log.info("discarding checkpoints of another version in {}", path);
+                return 0;
+            }
+            var count = buffer.getInt();
+            // each checkpoint takes at least the bytes of its position, a larger count is not allocated for
+            if (count < 0 || count > buffer.remaining() / Long.BYTES) {
+                log.warn("discarding checkpoints with a damaged count of {} in {}", count, path);
+                return 0;
+            }
+            var in = new DataInputStream(new ByteBufferInputStream(buffer));
+            // read all checkpoints before passing them on, so that a damaged file is discarded completely
+            var entries = new ArrayList<Entry<K, C>>(count);
+            for (int i = 0; i < count; i++) {
+                var key = keyCodec.decode(in);
+                var position = in.readLong();
+                entries.add(new Entry<>(key, position, checkpointCodec.decode(in)));
+            }
+            entries.forEach(entry -> consumer.accept(entry.key(), entry.position(), entry.checkpoint()));
+            return count;
+        } catch (IOException | RuntimeException e) {
+            log.warn("discarding unreadable checkpoints in {}", path, e);
+            return 0;
+        }
+    }
+
+    private record Entry<K, C>(K key, long position, C checkpoint) {
+    }
+}
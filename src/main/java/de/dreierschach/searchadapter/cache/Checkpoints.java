@@ -0,0 +1,87 @@
+package de.dreierschach.searchadapter.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted checkpoints per search-key, to find the nearest checkpoint prior to a requested position in logarithmic time.
+ * <p>
+ * The checkpoints are meant to mirror the entries of a bounded cache: every checkpoint put into the cache is also put here
+ * and removed again, when the cache removes it. Because the removal may lag behind, a found checkpoint should be verified
+ * against the cache.
+ *
+ * @param <K> the search-key type
+ * @param <C> the checkpoint type
+ */
+public class Checkpoints<K, C> {
+    private final Map<K, ConcurrentSkipListMap<Long, C>> checkpoints = new ConcurrentHashMap<>();
+
+    /**
+     * add a checkpoint
+     *
+     * @param key        the search-key
+     * @param position   the position of the checkpoint, e.g. an output-page
+     * @param checkpoint the checkpoint
+     */
+    public void put(K key, long position, C checkpoint) {
+        checkpoints.compute(key, (k, positions) -> {
+            var result = positions != null ? positions : new ConcurrentSkipListMap<Long, C>();
+            result.put(position, checkpoint);
+            return result;
+        });
+    }
+
+    /**
+     * remove a checkpoint, if it is still mapped to the given position
+     *
+     * @param key        the search-key
+     * @param position   the position of the checkpoint
+     * @param checkpoint the checkpoint
+     */
+    public void remove(K key, long position, C checkpoint) {
+        checkpoints.computeIfPresent(key, (k, positions) -> {
+            positions.remove(position, checkpoint);
+            return positions.isEmpty() ? null : positions;
+        });
+    }
+
+    /**
+     * find the checkpoint with the greatest position less than the given position
+     *
+     * @param key      the search-key
+     * @param position the position
+     * @return the position and checkpoint, or null if there is none
+     */
+    public Map.Entry<Long, C> lower(K key, long position) {
+        var positions = checkpoints.get(key);
+        return positions != null ? positions.lowerEntry(position) : null;
+    }
+
+    /**
+     * visit all checkpoints, ordered by position per search-key
+     *
+     * @param consumer the consumer of the checkpoints
+     */
+    public void forEach(Consumer<? super K, ? super C> consumer) {
+        checkpoints.forEach((key, positions) -> positions.forEach((position, checkpoint) -> consumer.accept(key, position, checkpoint)));
+    }
+
+    /**
+     * remove all checkpoints
+     */
+    public void clear() {
+        checkpoints.clear();
+    }
+
+    /**
+     * A consumer of checkpoints
+     *
+     * @param <K> the search-key type
+     * @param <C> the checkpoint type
+     */
+    @FunctionalInterface
+    public interface Consumer<K, C> {
+        void accept(K key, long position, C checkpoint);
+    }
+}
@@ -0,0 +1,262 @@
+package de.dreierschach.searchadapter.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A second tier for pages evicted from an on-heap cache: the pages are serialized by an {@link ItemCodec}, compressed and
+ * kept in direct byte-buffers outside the Java heap, so that many more pages can be kept without adding to GC pressure.
+ * <p>
+ * The store is bounded by the compressed size of its pages and removes the least recently stored pages first. A page is
+ * taken out of the store, when it is read, to be promoted back to the on-heap cache. A page expires with the time it was
+ * first written to the on-heap cache, so that it isn't kept longer in the second tier than in the first one.
+ * <p>
+ * The pages are kept in blocks of a slab, that grows by segments of direct memory up to the maximum size. The blocks of
+ * removed pages are reused, so the direct memory is allocated only once.
+ *
+ * @param <K> the key type
+ * @param <P> the page type
+ */
+public class CompressedPageStore<K, P> {
+    // the size of a block of the slab, a page is stored in as many blocks as it needs
+    private static final int BLOCK_SIZE = 512;
+    // the number of blocks of a segment, the slab grows by a segment at a time
+    private static final int SEGMENT_BLOCKS = 2048;
+
+    private final LinkedHashMap<K, StoredBlocks> pages = new LinkedHashMap<>();
+    private final long expireAfterNanos;
+    private final ItemCodec<P> codec;
+    private long bytes = 0;
+
+    // the segments of the slab
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    // the maximum number of blocks of the slab
+    private final long maximumBlocks;
+    // the number of blocks ever used, the blocks behind it are not yet used
+    private int usedBlocks = 0;
+    // the blocks of removed pages, that are free to be reused
+    private int[] freeBlocks = new int[SEGMENT_BLOCKS];
+    private int freeCount = 0;
+
+    /**
+     * @param maximumBytes the maximum compressed size of all pages in bytes
+     * @param codec        the codec of a page
+     */
+    public CompressedPageStore(long maximumBytes, ItemCodec<P> codec) {
+        this(maximumBytes, null, codec);
+    }
+
+    /**
+     * @param maximumBytes     the maximum compressed size of all pages in bytes
+     * @param expireAfterWrite the time to keep a page after it was written, or null to keep it until it is removed
+     * @param codec            the codec of a page
+     */
+    public CompressedPageStore(long maximumBytes, Duration expireAfterWrite, ItemCodec<P> codec) {
+        this.maximumBlocks = Math.min(Integer.MAX_VALUE, maximumBytes / BLOCK_SIZE);
+        this.expireAfterNanos = expireAfterWrite != null ? expireAfterWrite.toNanos() : Long.MAX_VALUE;
+        this.codec = codec;
+    }
+
+    /**
+     * A page taken out of the store
+     *
+     * @param page      the page
+     * @param writeTime the time the page was written, see {@link System#nanoTime()}
+     * @param <P>       the page type
+     */
+    public record StoredPage<P>(P page, long writeTime) {
+    }
+
+    /**
+     * store a page written just now, replacing a page with the same key
+     *
+     * @param key  the key
+     * @param page the page
+     */
+    public void put(K key, P page) {
+        put(key, page, System.nanoTime());
+    }
+
+    /**
+     * store a page, replacing a page with the same key. The page expires with the time it was written.
+     *
+     * @param key       the key
+     * @param page      the page
+     * @param writeTime the time the page was written, e.g. read from the underlying repository, see {@link System#nanoTime()}
+     */
+    public void put(K key, P page, long writeTime) {
+        if (expired(writeTime, System.nanoTime())) {
+            return;
+        }
+        var compressed = compress(page);
+        var blockCount = (compressed.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blockCount > maximumBlocks) {
+            return;
+        }
+        synchronized (pages) {
+            var replaced = pages.remove(key);
+            if (replaced != null) {
+                release(replaced);
+            }
+            // remove the least recently stored pages, until there are enough free blocks and the eldest page hasn't expired
+            var now = System.nanoTime();
+            var eldest = pages.values().iterator();
+            while (eldest.hasNext()) {
+                var evicted = eldest.next();
+                if (freeCount + (maximumBlocks - usedBlocks) >= blockCount && !expired(evicted.writeTime(), now)) {
+                    break;
+                }
+                eldest.remove();
+                release(evicted);
+            }
+            var blocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blocks[i] = allocate();
+                var length = Math.min(BLOCK_SIZE, compressed.length - i * BLOCK_SIZE);
+                segment(blocks[i]).put(offset(blocks[i]), compressed, i * BLOCK_SIZE, length);
+            }
+            pages.put(key, new StoredBlocks(blocks, compressed.length, writeTime));
+            bytes += compressed.length;
+        }
+    }
+
+    /**
+     * take a page out of the store
+     *
+     * @param key the key
+     * @return the page, or null if it is not stored or has expired
+     */
+    public P remove(K key) {
+        var stored = take(key);
+        return stored != null ? stored.page() : null;
+    }
+
+    /**
+     * take a page out of the store together with the time it was written, e.g. to keep its expiry, when it is promoted
+     *
+     * @param key the key
+     * @return the page, or null if it is not stored or has expired
+     */
+    public StoredPage<P> take(K key) {
+        byte[] compressed;
+        long writeTime;
+        synchronized (pages) {
+            var stored = pages.remove(key);
+            if (stored == null) {
+                return null;
+            }
+            release(stored);
+            if (expired(stored.writeTime(), System.nanoTime())) {
+                return null;
+            }
+            // the page is copied out of the slab, so that its blocks can be reused while it is decompressed
+            compressed = new byte[stored.length()];
+            for (int i = 0; i < stored.blocks().length; i++) {
+                var length = Math.min(BLOCK_SIZE, stored.length() - i * BLOCK_SIZE);
+                segment(stored.blocks()[i]).get(offset(stored.blocks()[i]), compressed, i * BLOCK_SIZE, length);
+            }
+            writeTime = stored.writeTime();
+        }
+        return new StoredPage<>(decompress(compressed), writeTime);
+    }
+
+    /**
+     * @return the number of stored pages
+     */
+    public int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    /**
+     * @return the compressed size of all stored pages in bytes
+     */
+    public long bytes() {
+        synchronized (pages) {
+            return bytes;
+        }
+    }
+
+    /**
+     * remove all pages, the slab is kept to be reused
+     */
+    public void clear() {
+        synchronized (pages) {
+            pages.clear();
+            bytes = 0;
+            usedBlocks = 0;
+            freeCount = 0;
+        }
+    }
+
+    // the blocks of a stored page
+    private record StoredBlocks(int[] blocks, int length, long writeTime) {
+    }
+
+    private boolean expired(long writeTime, long now) {
+        return expireAfterNanos != Long.MAX_VALUE && now - writeTime >= expireAfterNanos;
+    }
+
+    // take a free block, or the next unused one, allocating a new segment if needed
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeBlocks[--freeCount];
+        }
+        var block = usedBlocks++;
+        if (block / SEGMENT_BLOCKS >= segments.size()) {
+            var blocks = (int) Math.min(SEGMENT_BLOCKS, maximumBlocks - (long) segments.size() * SEGMENT_BLOCKS);
+            segments.add(ByteBuffer.allocateDirect(blocks * BLOCK_SIZE));
+        }
+        return block;
+    }
+
+    // free the blocks of a removed page
+    private void release(StoredBlocks stored) {
+        bytes -= stored.length();
+        if (freeCount + stored.blocks().length > freeBlocks.length) {
+            freeBlocks = Arrays.copyOf(freeBlocks, Math.max(2 * freeBlocks.length, freeCount + stored.blocks().length));
+        }
+        for (var block : stored.blocks()) {
+            freeBlocks[freeCount++] = block;
+        }
+    }
+
+    private ByteBuffer segment(int block) {
+        return segments.get(block / SEGMENT_BLOCKS);
+    }
+
+    private static int offset(int block) {
+        return block % SEGMENT_BLOCKS * BLOCK_SIZE;
+    }
+
+    private byte[] compress(P page) {
+        var compressed = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(new DeflaterOutputStream(compressed))) {
+            codec.encode(page, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private P decompress(byte[] compressed) {
+        try (var in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            return codec.decode(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
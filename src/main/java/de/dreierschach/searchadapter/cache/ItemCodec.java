@@ -0,0 +1,55 @@
+package de.dreierschach.searchadapter.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Serializes items, e.g. to keep them in a {@link CompressedPageStore} outside the Java heap.
+ *
+ * @param <T> the item type
+ */
+public interface ItemCodec<T> {
+
+    /**
+     * write an item
+     *
+     * @param item the item
+     * @param out  the output to write to
+     * @throws IOException if the item cannot be written
+     */
+    void encode(T item, DataOutput out) throws IOException;
+
+    /**
+     * read an item, that was written by {@link #encode(Object, DataOutput)}
+     *
+     * @param in the input to read from
+     * @return the item
+     * @throws IOException if the item cannot be read
+     */
+    T decode(DataInput in) throws IOException;
+
+    /**
+     * a codec, that also writes and reads null
+     *
+     * @param codec the codec of the non-null items
+     * @param <T>   the item type
+     * @return the codec
+     */
+    static <T> ItemCodec<T> nullable(ItemCodec<T> codec) {
+        return new ItemCodec<>() {
+            @Override
+            public void encode(T item, DataOutput out) throws IOException {
+                out.writeBoolean(item != null);
+                if (item != null) {
+                    codec.encode(item, out);
+                }
+            }
+
+            @Override
+            public T decode(DataInput in) throws IOException {
+                return in.readBoolean() ? codec.decode(in) : null;
+            }
+        };
+    }
+}
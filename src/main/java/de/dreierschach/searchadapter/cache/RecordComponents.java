@@ -0,0 +1,39 @@
+package de.dreierschach.searchadapter.cache;
+
+import java.lang.reflect.Method;
+
+// the accessors of the components of record classes, looked up once per class, so that estimating the size of a record
+// doesn't reflect on its class every time
+final class RecordComponents {
+    private static final ClassValue<Component[]> COMPONENTS = new ClassValue<>() {
+        @Override
+        protected Component[] computeValue(Class<?> type) {
+            var recordComponents = type.getRecordComponents();
+            var components = new Component[recordComponents.length];
+            for (int i = 0; i < recordComponents.length; i++) {
+                Method accessor;
+                try {
+                    accessor = recordComponents[i].getAccessor();
+                    accessor.setAccessible(true);
+                } catch (RuntimeException e) {
+                    // the component can't be read, e.g. because its module isn't open
+                    accessor = null;
+                }
+                components[i] = new Component(accessor, recordComponents[i].getType().isPrimitive());
+            }
+            return components;
+        }
+    };
+
+    private RecordComponents() {
+    }
+
+    // the components of a record class
+    static Component[] of(Class<?> type) {
+        return COMPONENTS.get(type);
+    }
+
+    // a component of a record class: its accessor, or null if it can't be read, and whether its type is primitive
+    record Component(Method accessor, boolean primitive) {
+    }
+}
@@ -0,0 +1,127 @@
+package de.dreierschach.searchadapter.cache;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Estimates the retained heap size of cached objects in bytes, to bound caches by memory instead of by number of entries.
+ * <p>
+ * The estimate needs not be exact, but it should grow with the real size, e.g. with the length of strings and collections.
+ *
+ * @param <T> the object type
+ */
+@FunctionalInterface
+public interface SizeEstimator<T> {
+
+    // the approximate overhead of a cache entry, its key and a small result object
+    long ENTRY_OVERHEAD = 96;
+
+    // the approximate size of an object without any fields
+    long OBJECT_OVERHEAD = 16;
+
+    // the size assumed for an object, whose size cannot be estimated
+    long UNKNOWN_SIZE = 64;
+
+    // the maximum depth to descend into nested objects
+    int MAX_DEPTH = 8;
+
+    /**
+     * estimate the retained size of an object
+     *
+     * @param object the object, may be null
+     * @return the estimated size in bytes
+     */
+    long estimate(T object);
+
+    /**
+     * estimate the retained size of a list of objects, including the list itself
+     *
+     * @param objects the objects
+     * @return the estimated size in bytes
+     */
+    default long estimateAll(Collection<? extends T> objects) {
+        long size = OBJECT_OVERHEAD + 8L * objects.size();
+        for (var object : objects) {
+            size += estimate(object);
+        }
+        return size;
+    }
+
+    /**
+     * the default estimator: it descends into strings, boxed primitives, enums, records, collections, maps and arrays and assumes
+     * a fixed size for all other objects. Override it for item types, that are neither records nor made of these types.
+     *
+     * @param <T> the object type
+     * @return the default estimator
+     */
+    static <T> SizeEstimator<T> defaultEstimator() {
+        return object -> estimate(object, 0);
+    }
+
+    /**
+     * convert an estimated size to a weight of a cache entry
+     *
+     * @param size the estimated size in bytes
+     * @return the weight, at least 1
+     */
+    static int weight(long size) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, size));
+    }
+
+    private static long estimate(Object object, int depth) {
+        if (object == null || object instanceof Enum<?>) {
+            return 0;
+        }
+        if (object instanceof CharSequence chars) {
+            return OBJECT_OVERHEAD + 24 + chars.length();
+        }
+        if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return OBJECT_OVERHEAD + 8;
+        }
+        if (depth >= MAX_DEPTH) {
+            return UNKNOWN_SIZE;
+        }
+        if (object instanceof Collection<?> collection) {
+            long size = OBJECT_OVERHEAD + 8L * collection.size();
+            for (var element : collection) {
+                size += estimate(element, depth + 1);
+            }
+            return size;
+        }
+        if (object instanceof Map<?, ?> map) {
+            long size = OBJECT_OVERHEAD + 32L * map.size();
+            for (var entry : map.entrySet()) {
+                size += estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (object.getClass().isArray()) {
+            var length = Array.getLength(object);
+            if (object.getClass().getComponentType().isPrimitive()) {
+                return OBJECT_OVERHEAD + 8L * length;
+            }
+            long size = OBJECT_OVERHEAD + 8L * length;
+            for (int i = 0; i < length; i++) {
+                size += estimate(Array.get(object, i), depth + 1);
+            }
+            return size;
+        }
+        if (object instanceof Record) {
+            long size = OBJECT_OVERHEAD;
+            for (var component : RecordComponents.of(object.getClass())) {
+                if (component.primitive()) {
+                    size += 8;
+                    continue;
+                }
+                try {
+                    size += component.accessor() != null ? 8 + estimate(component.accessor().invoke(object), depth + 1) : UNKNOWN_SIZE;
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    size += UNKNOWN_SIZE;
+                }
+            }
+            return size;
+        }
+        return UNKNOWN_SIZE;
+    }
+}
@@ -0,0 +1,136 @@
+package de.dreierschach.searchadapter.customFilter;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * Helpers for bitmaps of matching items: bit i of the bitmap is set, if the item at position i matches.
+ */
+final class Bitmaps {
+    // the number of words, a parallel evaluation does not split any further
+    private static final int PARALLEL_CHUNK_WORDS = 4;
+
+    private Bitmaps() {
+    }
+
+    /**
+     * create a bitmap for a number of items
+     *
+     * @param size the number of items
+     * @return an empty bitmap
+     */
+    static long[] create(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * test items sequentially
+     *
+     * @param items     the items
+     * @param predicate the predicate to test the items with
+     * @return the bitmap of the matching items
+     */
+    static <T> long[] test(List<T> items, Predicate<T> predicate) {
+        var bits = create(items.size());
+        testWords(items, predicate, bits, 0, bits.length);
+        return bits;
+    }
+
+    /**
+     * test items in parallel, every task tests whole words of the bitmap
+     *
+     * @param items     the items
+     * @param predicate the predicate to test the items with, it must be thread-safe
+     * @param pool      the pool to run the tests in
+     * @return the bitmap of the matching items
+     */
+    static <T> long[] testParallel(List<T> items, Predicate<T> predicate, ForkJoinPool pool) {
+        var bits = create(items.size());
+        pool.invoke(new TestAction<>(items, predicate, bits, 0, bits.length));
+        return bits;
+    }
+
+    /**
+     * find the next matching position
+     *
+     * @param bits the bitmap
+     * @param from the first position to look at
+     * @return the next matching position or -1, if there is none
+     */
+    static int nextSetBit(long[] bits, int from) {
+        var word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        var remaining = bits[word] & (-1L << from);
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * count the matching positions from a position to the end
+     *
+     * @param bits the bitmap
+     * @param from the first position to count
+     * @return the number of matching positions
+     */
+    static int count(long[] bits, int from) {
+        var word = from >>> 6;
+        if (word >= bits.length) {
+            return 0;
+        }
+        var count = Long.bitCount(bits[word] & (-1L << from));
+        for (int i = word + 1; i < bits.length; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        return count;
+    }
+
+    private static <T> void testWords(List<T> items, Predicate<T> predicate, long[] bits, int fromWord, int toWord) {
+        var to = Math.min(items.size(), toWord << 6);
+        for (int i = fromWord << 6; i < to; i++) {
+            if (predicate.test(items.get(i))) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    // tests a range of words, splitting it in halves until it is small enough
+    private static class TestAction<T> extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // the action is never serialized, the items and the predicate needn't be serializable
+        private final transient List<T> items;
+        private final transient Predicate<T> predicate;
+        private final long[] bits;
+        private final int fromWord;
+        private final int toWord;
+
+        TestAction(List<T> items, Predicate<T> predicate, long[] bits, int fromWord, int toWord) {
+            this.items = items;
+            this.predicate = predicate;
+            this.bits = bits;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+        }
+
+        @Override
+        protected void compute() {
+            if (toWord - fromWord <= PARALLEL_CHUNK_WORDS) {
+                testWords(items, predicate, bits, fromWord, toWord);
+                return;
+            }
+            var middle = (fromWord + toWord) >>> 1;
+            invokeAll(new TestAction<>(items, predicate, bits, fromWord, middle), new TestAction<>(items, predicate, bits, middle, toWord));
+        }
+    }
+}
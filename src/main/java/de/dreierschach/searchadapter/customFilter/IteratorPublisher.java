@@ -0,0 +1,119 @@
+package de.dreierschach.searchadapter.customFilter;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the items of an iterator, reading only as many items as are requested by the subscriber.
+ * <p>
+ * Every subscriber gets its own iterator, which is created and read on the given executor.
+ *
+ * @param <T> the items type
+ */
+class IteratorPublisher<T> implements Flow.Publisher<T> {
+    private final Supplier<Iterator<T>> iterators;
+    private final Executor executor;
+
+    IteratorPublisher(Supplier<Iterator<T>> iterators, Executor executor) {
+        this.iterators = iterators;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new IteratorSubscription<>(subscriber, iterators, executor));
+    }
+
+    // emits the items of one iterator to one subscriber
+    private static class IteratorSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<Iterator<T>> iterators;
+        private final Executor executor;
+
+        private final AtomicLong demand = new AtomicLong();
+        // counts the calls to drain(), so that only one thread at a time emits items
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean done = false;
+        private volatile Throwable invalidRequest;
+        private Iterator<T> iterator;
+
+        IteratorSubscription(Flow.Subscriber<? super T> subscriber, Supplier<Iterator<T>> iterators, Executor executor) {
+            this.subscriber = subscriber;
+            this.iterators = iterators;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("the number of requested items must be positive, but was " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    done = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        private void drain() {
+            int drains = 1;
+            do {
+                long requested = demand.get();
+                long emitted = 0;
+                while (!done && emitted < requested) {
+                    if (invalidRequest != null) {
+                        fail(invalidRequest);
+                        return;
+                    }
+                    T item;
+                    try {
+                        if (iterator == null) {
+                            iterator = iterators.get();
+                        }
+                        if (!iterator.hasNext()) {
+                            done = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        item = iterator.next();
+                    } catch (RuntimeException e) {
+                        fail(e);
+                        return;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (!done && invalidRequest != null) {
+                    fail(invalidRequest);
+                    return;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                drains = pendingDrains.addAndGet(-drains);
+            } while (drains != 0);
+        }
+
+        private void fail(Throwable throwable) {
+            done = true;
+            subscriber.onError(throwable);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.dreierschach.searchadapter.customFilter;
+
+import java.util.Arrays;
+
+/**
+ * The numbers of matching items of the input-pages of a search and a custom filter, in a Fenwick tree of prefix sums.
+ * <p>
+ * The counts may be added in any order, but the prefix sums only reach over the known input-pages from page 0 on.
+ */
+final class MatchCounts {
+    // the count of an input-page, that is not yet known
+    private static final int UNKNOWN = -1;
+
+    // the counts of the input-pages
+    private int[] counts = new int[16];
+    // the Fenwick tree over the counts of the known input-pages, tree[i] sums the counts of the pages i - (i & -i) to i - 1
+    private long[] tree = new long[17];
+    // the number of known input-pages from page 0 on
+    private int known = 0;
+
+    MatchCounts() {
+        Arrays.fill(counts, UNKNOWN);
+    }
+
+    /**
+     * add the count of an input-page
+     *
+     * @param page  the input-page
+     * @param count the number of its matching items
+     */
+    synchronized void put(long page, int count) {
+        if (page < known || page >= Integer.MAX_VALUE) {
+            return;
+        }
+        var index = (int) page;
+        if (index >= counts.length) {
+            var size = counts.length;
+            while (size <= index) {
+                size *= 2;
+            }
+            var oldSize = counts.length;
+            counts = Arrays.copyOf(counts, size);
+            Arrays.fill(counts, oldSize, size, UNKNOWN);
+            // the tree is rebuilt from the known counts, because the new nodes sum older pages
+            tree = new long[size + 1];
+            for (int i = 0; i < known; i++) {
+                add(i, counts[i]);
+            }
+        }
+        counts[index] = count;
+        // the known input-pages grow, as long as there is no gap
+        while (known < counts.length && counts[known] != UNKNOWN) {
+            add(known, counts[known]);
+            known++;
+        }
+    }
+
+    /**
+     * the number of known input-pages from page 0 on
+     *
+     * @return the number of input-pages
+     */
+    synchronized int known() {
+        return known;
+    }
+
+    /**
+     * the number of matching items in front of an input-page
+     *
+     * @param page an input-page, at most the number of known input-pages
+     * @return the number of matching items
+     */
+    synchronized long prefix(int page) {
+        long sum = 0;
+        for (int i = Math.min(page, known); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * find the last known input-page, in front of which there are at most the given number of matching items. The item with
+     * this offset in the filtered result is in this input-page or behind it.
+     *
+     * @param offset the offset in the filtered result
+     * @return the input-page, at most the number of known input-pages
+     */
+    synchronized int pageOf(long offset) {
+        // descend the tree, adding all nodes not exceeding the offset
+        int page = 0;
+        long sum = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            var next = page + step;
+            if (next <= known && sum + tree[next] <= offset) {
+                page = next;
+                sum += tree[next];
+            }
+        }
+        return page;
+    }
+
+    // add a count to the tree
+    private void add(int page, int count) {
+        for (int i = page + 1; i < tree.length; i += i & -i) {
+            tree[i] += count;
+        }
+    }
+}
@@ -1,15 +1,58 @@
 package de.dreierschach.searchadapter.customFilter;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.dreierschach.searchadapter.cache.CheckpointFile;
+import de.dreierschach.searchadapter.cache.Checkpoints;
+import de.dreierschach.searchadapter.cache.CompressedPageStore;
+import de.dreierschach.searchadapter.cache.ItemCodec;
+import de.dreierschach.searchadapter.cache.SizeEstimator;
+import de.dreierschach.searchadapter.metrics.SearchAdapterListener;
+import de.dreierschach.searchadapter.metrics.SearchAdapterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.OutputPageAndIndex.FIRST;
-import static java.util.concurrent.TimeUnit.MINUTES;
+import static de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.OffsetAndIndex.FIRST;
 
 /**
  * Adapts a repository, that supports paged searching, but lacks some needed filter functions.
@@ -21,9 +64,62 @@ import static java.util.concurrent.TimeUnit.MINUTES;
  * @param <V> the custom filter type
  */
 abstract public class SearchWithFilterAdapter<T, U, V> {
+    private static final Logger log = LoggerFactory.getLogger(SearchWithFilterAdapter.class);
+
+    // the number of searches, for which access patterns or statistics are remembered
+    private static final long SEARCH_TRACKING_SIZE = 10_000;
+
+    // the page-size of the input-pages and the distance of the cached indexes of a range, that is not requested by pages
+    private static final long RANGE_PAGE_SIZE = 100;
+
+    // the number of custom filters per search, whose cached matches may be reused by stricter filters
+    private static final int KNOWN_FILTERS_SIZE = 16;
+
+    // runs every task on a new virtual thread
+    private static final Executor VIRTUAL_THREADS = task -> Thread.ofVirtual().name("searchadapter-", 0).start(task);
+
+    private AsyncCache<PagedSearch<U>, PagedSearchResult<T>> asyncInputCache;
     private Cache<PagedSearch<U>, PagedSearchResult<T>> inputCache;
-    private Cache<PagedSearchWithFilter<U, V>, Index> indexCache;
+    private CompressedPageStore<PagedSearch<U>, PagedSearchResult<T>> compressedInputCache;
+    // the times the input-pages were read from the underlying repository, they expire with it in both tiers of the input cache
+    private final Cache<PagedSearchResult<T>, Long> writeTimes = Caffeine.newBuilder().weakKeys().build();
+    private Cache<OffsetKey<U, V>, Index> indexCache;
+    private final Checkpoints<FilterKey<U, V>, Index> checkpoints = new Checkpoints<>();
+    private CheckpointFile<FilterKey<U, V>, Index> checkpointFile;
+    private final Cache<FilterKey<U, V>, Walk> walks = Caffeine.newBuilder().weakValues().build();
     private boolean cacheEnabled = false;
+    private final SearchAdapterMetrics metrics = new SearchAdapterMetrics();
+    private final List<SearchAdapterListener> listeners = new CopyOnWriteArrayList<>(List.of(metrics));
+    private Duration expireAfterWrite = Duration.ofMinutes(5);
+    private Duration refreshAfterWrite;
+    private Executor refreshExecutor;
+
+    private Executor readAheadExecutor;
+    private int readAheadPages;
+    private Cache<SearchKey<U, V>, Long> lastRequestedPages;
+    private final Set<PagedSearchWithFilter<U, V>> pendingReadAheads = ConcurrentHashMap.newKeySet();
+
+    private long basePageSize = 0;
+    private int maxFetchMultiplier = 1;
+    private final Cache<FilterKey<U, V>, Selectivity> selectivities = Caffeine.newBuilder()
+            .expireAfterWrite(expireAfterWrite)
+            .maximumSize(SEARCH_TRACKING_SIZE)
+            .build();
+    // the numbers of input-items reported by the underlying repository
+    private final Cache<InputKey<U>, Long> totalSizes = Caffeine.newBuilder()
+            .expireAfterWrite(expireAfterWrite)
+            .maximumSize(SEARCH_TRACKING_SIZE)
+            .build();
+    private AsyncCache<FilterKey<U, V>, Long> countCache;
+    private AsyncCache<MatchKey<U, V>, Matches> matchCache;
+    private Cache<SearchKey<U, V>, MatchCounts> matchCounts;
+    private AsyncCache<PagedSearchWithFilter<U, V>, PagedSearchResult<T>> outputCache;
+    private Cache<InputKey<U>, KnownFilters<V>> knownFilters;
+
+    private ForkJoinPool filterPool;
+    private int parallelFilterThreshold = Integer.MAX_VALUE;
+    private Executor seekExecutor;
+    private int seekParallelism = 1;
 
     // -------- abstract methods
 
@@ -44,27 +140,505 @@ abstract public class SearchWithFilterAdapter<T, U, V> {
      */
     abstract protected boolean test(T item, V customFilter);
 
+    // -------- overridable methods
+
+    /**
+     * Delegate a search-request to the underlying repository asynchronously. Override it, if the repository has a non-blocking
+     * client, so that walks over many input-pages don't block a thread while waiting for it.
+     * <p>
+     * By default {@link #find(PagedSearch)} is called in the calling thread. This is cheap with {@link #findAndFilterAsync(PagedSearchWithFilter)},
+     * that runs on virtual threads.
+     *
+     * @param search the search-request
+     * @return the future search-result
+     */
+    protected CompletableFuture<PagedSearchResult<T>> findAsync(PagedSearch<U> search) {
+        try {
+            return CompletableFuture.completedFuture(find(search));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * tests if a custom filter is stricter than another one, so that every item matching it also matches the other one.
+     * Override it to let refined filters reuse the cached matches of the filters they refine, see {@link #enableMatchCache(long)}.
+     *
+     * @param customFilter the (stricter) custom filter
+     * @param other        the other (looser) custom filter
+     * @return true, if every item matching the custom filter matches the other one, too - false, if unknown
+     */
+    protected boolean implies(V customFilter, V other) {
+        return false;
+    }
+
+    /**
+     * compile a custom filter into a predicate, that tests all items of a request. Override it, if preparing the filter is
+     * expensive, e.g. to parse a pattern or a date only once instead of for every item.
+     *
+     * @param customFilter the custom filter
+     * @return a predicate, that is true for items matching the filter - it must be thread-safe, if filtering in parallel is enabled
+     */
+    protected Predicate<T> compile(V customFilter) {
+        return item -> test(item, customFilter);
+    }
+
+    /**
+     * tests a batch of items, e.g. an input-page. Override it, if the items can be tested more efficiently together.
+     * <p>
+     * By default the items are tested one by one, or in parallel if enabled and the batch is big enough.
+     *
+     * @param items  the items to test
+     * @param filter the compiled custom filter
+     * @return a bitmap of the matching items: bit i (bit i % 64 of element i / 64) is set, if the i-th item matches
+     */
+    protected long[] testBatch(List<T> items, Predicate<T> filter) {
+        if (filterPool != null && items.size() >= parallelFilterThreshold) {
+            return Bitmaps.testParallel(items, filter, filterPool);
+        }
+        return Bitmaps.test(items, filter);
+    }
+
     // -------- public methods
 
     /**
      * initialize caches for input-pages and indexes
      *
      * @param inputCacheSize the size of the cache for requests to the underlying repository
-     * @param indexCacheSize the size of the cache for information, which pages to request when filling a result-page - this cache may be
-     *                       quite big, because it stores only two long values
+     * @param indexCacheSize the size of the cache for information, which input-item to read first when filling a result-page - this
+     *                       cache may be quite big, because it stores only a few long values. The indexes are stored by the position
+     *                       in the filtered result, so they are shared by all page-sizes.
      */
     public void enableCache(long inputCacheSize, long indexCacheSize) {
-        inputCache = Caffeine.newBuilder()
-                .expireAfterWrite(5, MINUTES)
-                .maximumSize(inputCacheSize)
+        enableCache(Caffeine.newBuilder().maximumSize(inputCacheSize), Caffeine.newBuilder().maximumSize(indexCacheSize));
+    }
+
+    /**
+     * initialize caches for input-pages and indexes, that are bounded by their estimated size in bytes instead of their number
+     * of entries. The items are weighed by the default {@link SizeEstimator}.
+     *
+     * @param inputCacheBytes the maximum size of the cache for requests to the underlying repository in bytes
+     * @param indexCacheBytes the maximum size of the cache for indexes in bytes
+     */
+    public void enableWeightedCache(long inputCacheBytes, long indexCacheBytes) {
+        enableWeightedCache(inputCacheBytes, indexCacheBytes, SizeEstimator.defaultEstimator());
+    }
+
+    /**
+     * initialize caches for input-pages and indexes, that are bounded by their estimated size in bytes instead of their number
+     * of entries. An input-page is weighed by its items, an index by its search-request and custom filter.
+     *
+     * @param inputCacheBytes the maximum size of the cache for requests to the underlying repository in bytes
+     * @param indexCacheBytes the maximum size of the cache for indexes in bytes
+     * @param itemSize        the estimator of the retained size of an item
+     */
+    public void enableWeightedCache(long inputCacheBytes, long indexCacheBytes, SizeEstimator<? super T> itemSize) {
+        SizeEstimator<Object> keySize = SizeEstimator.defaultEstimator();
+        enableCache(
+                Caffeine.newBuilder()
+                        .maximumWeight(inputCacheBytes)
+                        .weigher((PagedSearch<U> search, PagedSearchResult<T> result) -> SizeEstimator.weight(
+                                SizeEstimator.ENTRY_OVERHEAD + keySize.estimate(search.search()) + itemSize.estimateAll(result.items()))),
+                Caffeine.newBuilder()
+                        .maximumWeight(indexCacheBytes)
+                        // an index is also kept as a checkpoint, so it is weighed twice
+                        .weigher((OffsetKey<U, V> key, Index index) -> SizeEstimator.weight(2 * SizeEstimator.ENTRY_OVERHEAD +
+                                keySize.estimate(key.search()) + keySize.estimate(key.customFilter()))));
+    }
+
+    private void enableCache(Caffeine<? super PagedSearch<U>, ? super PagedSearchResult<T>> inputCacheBuilder,
+                             Caffeine<? super OffsetKey<U, V>, ? super Index> indexCacheBuilder) {
+        var expiry = expireAfterWrite.toNanos();
+        var inputCacheWithListener = inputCacheBuilder
+                .recordStats()
+                // evictions happen on the calling thread, so that the cached input-pages don't depend on the timing of another
+                // thread, reloads run on the refresh executor, see asyncReload
+                .executor(Runnable::run)
+                // evicted input-pages are moved into the compressed cache, if enabled
+                .<PagedSearch<U>, PagedSearchResult<T>>removalListener((key, result, cause) -> {
+                    var compressed = compressedInputCache;
+                    if (compressed != null && key != null && cause == RemovalCause.SIZE) {
+                        compressed.put(key, result, writeTime(result));
+                    }
+                })
+                // an input-page expires with the time it was read, also when it is moved back from the compressed cache
+                .expireAfter(new Expiry<PagedSearch<U>, PagedSearchResult<T>>() {
+                    @Override
+                    public long expireAfterCreate(PagedSearch<U> pagedSearch, PagedSearchResult<T> result, long currentTime) {
+                        return Math.max(0, expiry - (currentTime - writeTime(result)));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(PagedSearch<U> pagedSearch, PagedSearchResult<T> result, long currentTime,
+                                                  long currentDuration) {
+                        return Math.max(0, expiry - (currentTime - writeTime(result)));
+                    }
+
+                    @Override
+                    public long expireAfterRead(PagedSearch<U> pagedSearch, PagedSearchResult<T> result, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                });
+        if (refreshAfterWrite != null) {
+            inputCacheWithListener.refreshAfterWrite(refreshAfterWrite);
+        }
+        asyncInputCache = inputCacheWithListener.buildAsync(new CacheLoader<>() {
+            @Override
+            public PagedSearchResult<T> load(PagedSearch<U> pagedSearch) {
+                return upstreamFind(pagedSearch);
+            }
+
+            @Override
+            public PagedSearchResult<T> reload(PagedSearch<U> pagedSearch, PagedSearchResult<T> oldResult) {
+                var result = upstreamFind(pagedSearch);
+                if (!result.items().equals(oldResult.items())) {
+                    invalidateChanged(pagedSearch);
+                }
+                return result;
+            }
+
+            @Override
+            public CompletableFuture<PagedSearchResult<T>> asyncReload(PagedSearch<U> pagedSearch, PagedSearchResult<T> oldResult,
+                                                                       Executor executor) {
+                return CompletableFuture.supplyAsync(() -> reload(pagedSearch, oldResult), refreshExecutor);
+            }
+        });
+        inputCache = asyncInputCache.synchronous();
+        // the checkpoints follow the removals from the index cache
+        checkpoints.clear();
+        var indexCacheWithListener = indexCacheBuilder
+                .recordStats()
+                .executor(Runnable::run)
+                .<OffsetKey<U, V>, Index>removalListener((key, index, cause) -> {
+                    if (key != null && cause != RemovalCause.REPLACED) {
+                        checkpoints.remove(new FilterKey<>(key.search(), key.customFilter()), key.offset(), index);
+                    }
+                });
+        // indexes can't be reloaded: an input-page, that was evicted and is read again, is not compared to the evicted one, so
+        // they expire after writing even with refreshing ahead, instead of pointing into changed input-pages while they are used
+        indexCache = indexCacheWithListener
+                .expireAfterWrite(expireAfterWrite)
                 .build();
-        indexCache = Caffeine.newBuilder()
-                .expireAfterWrite(5, MINUTES)
-                .maximumSize(indexCacheSize)
+        matchCounts = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(SEARCH_TRACKING_SIZE)
                 .build();
+        countCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(SEARCH_TRACKING_SIZE)
+                .buildAsync();
         cacheEnabled = true;
     }
 
+    // remove everything derived from an input-page, that has changed when it was reloaded
+    private void invalidateChanged(PagedSearch<U> pagedSearch) {
+        if (matchCache != null) {
+            // the cached matches of the changed input-page are outdated
+            matchCache.asMap().keySet().removeIf(key -> key.page() == pagedSearch.page() &&
+                    key.pageSize() == pagedSearch.pageSize() && Objects.equals(key.search(), pagedSearch.search()));
+        }
+        if (outputCache != null) {
+            // the cached output-pages of the search may contain items of the changed input-page
+            outputCache.asMap().keySet().removeIf(key -> Objects.equals(key.search(), pagedSearch.search()));
+        }
+        // the indexes and counts of matching items of the search are outdated from the changed input-page on, the checkpoints
+        // follow the removals from the index cache
+        indexCache.asMap().keySet().removeIf(key -> Objects.equals(key.search(), pagedSearch.search()));
+        matchCounts.asMap().keySet().removeIf(key -> Objects.equals(key.search(), pagedSearch.search()));
+        countCache.asMap().keySet().removeIf(key -> Objects.equals(key.search(), pagedSearch.search()));
+    }
+
+    /**
+     * set the time, after which cached input-pages, indexes, matches and the statistics of searches expire - by default 5
+     * minutes.
+     * <p>
+     * Call it before enabling the caches.
+     *
+     * @param expireAfterWrite the time to keep a cached entry after it was written
+     */
+    public void setExpiry(Duration expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        selectivities.policy().expireAfterWrite().ifPresent(expiry -> expiry.setExpiresAfter(expireAfterWrite));
+        totalSizes.policy().expireAfterWrite().ifPresent(expiry -> expiry.setExpiresAfter(expireAfterWrite));
+    }
+
+    /**
+     * enable refreshing input-pages ahead of their expiry: an input-page requested after the refresh-time is reloaded
+     * asynchronously, while the cached input-page is still returned (stale-while-revalidate). If reloading fails, the cached
+     * input-page is kept until it expires. Indexes can't be reloaded, they are removed when a reloaded input-page has changed
+     * and expire like without refreshing ahead.
+     * <p>
+     * Call it before enabling the caches.
+     *
+     * @param refreshAfterWrite the time after writing an input-page, after which it is reloaded on the next request
+     * @param executor          the executor to reload input-pages on
+     */
+    public void enableRefreshAhead(Duration refreshAfterWrite, Executor executor) {
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.refreshExecutor = executor;
+    }
+
+    /**
+     * enable a second tier for input-pages evicted from the input cache: the input-pages are serialized, compressed and kept
+     * outside the Java heap, so that many more input-pages can be kept. An input-page found there is moved back into the
+     * input cache. It expires in both tiers with the time it was read from the underlying repository.
+     * <p>
+     * The compressed cache only takes effect when caching is enabled.
+     *
+     * @param maximumBytes the maximum compressed size of all input-pages in bytes
+     * @param itemCodec    the codec to serialize the items with
+     */
+    public void enableCompressedCache(long maximumBytes, ItemCodec<T> itemCodec) {
+        compressedInputCache = new CompressedPageStore<>(maximumBytes, expireAfterWrite, new ItemCodec<>() {
+            @Override
+            public void encode(PagedSearchResult<T> result, DataOutput out) throws IOException {
+                out.writeLong(result.page());
+                out.writeLong(result.pageSize());
+                out.writeLong(result.totalSize());
+                out.writeInt(result.items().size());
+                for (var item : result.items()) {
+                    itemCodec.encode(item, out);
+                }
+            }
+
+            @Override
+            public PagedSearchResult<T> decode(DataInput in) throws IOException {
+                var page = in.readLong();
+                var pageSize = in.readLong();
+                var totalSize = in.readLong();
+                var size = in.readInt();
+                var items = new ArrayList<T>(size);
+                for (int i = 0; i < size; i++) {
+                    items.add(itemCodec.decode(in));
+                }
+                return new PagedSearchResult<>(items, page, pageSize, totalSize);
+            }
+        });
+    }
+
+    /**
+     * enable persisting indexes in a memory-mapped file, so that they can be reused after a restart. The indexes found in the
+     * file are loaded into the index cache, unless they were saved with another version. Call {@link #saveCheckpoints()} to
+     * write the indexes, e.g. when shutting down.
+     * <p>
+     * The indexes are only loaded when caching is enabled.
+     *
+     * @param file        the file
+     * @param version     the version of the indexes - change it, when the data of the underlying repository changes
+     * @param searchCodec the codec to serialize search-requests with
+     * @param filterCodec the codec to serialize custom filters with
+     * @return the number of loaded indexes
+     */
+    public int enableCheckpointFile(Path file, long version, ItemCodec<U> searchCodec, ItemCodec<V> filterCodec) {
+        var nullableSearchCodec = ItemCodec.nullable(searchCodec);
+        var nullableFilterCodec = ItemCodec.nullable(filterCodec);
+        checkpointFile = new CheckpointFile<>(file, version, new ItemCodec<>() {
+            @Override
+            public void encode(FilterKey<U, V> key, DataOutput out) throws IOException {
+                nullableSearchCodec.encode(key.search(), out);
+                nullableFilterCodec.encode(key.customFilter(), out);
+            }
+
+            @Override
+            public FilterKey<U, V> decode(DataInput in) throws IOException {
+                return new FilterKey<>(nullableSearchCodec.decode(in), nullableFilterCodec.decode(in));
+            }
+        }, new ItemCodec<>() {
+            @Override
+            public void encode(Index index, DataOutput out) throws IOException {
+                out.writeLong(index.item());
+            }
+
+            @Override
+            public Index decode(DataInput in) throws IOException {
+                return new Index(in.readLong());
+            }
+        });
+        if (!cacheEnabled) {
+            return 0;
+        }
+        return checkpointFile.load((key, offset, index) -> {
+            indexCache.put(new OffsetKey<>(key.search(), key.customFilter(), offset), index);
+            checkpoints.put(key, offset, index);
+        });
+    }
+
+    /**
+     * write the cached indexes into the checkpoint file, see {@link #enableCheckpointFile(Path, long, ItemCodec, ItemCodec)}
+     *
+     * @return the number of written indexes
+     */
+    public int saveCheckpoints() {
+        return checkpointFile != null ? checkpointFile.save(checkpoints) : 0;
+    }
+
+    /**
+     * initialize a cache for output-pages: a cached output-page is returned without reading input-pages or testing items.
+     * <p>
+     * The output-pages expire like the input-pages. If refreshing ahead is enabled, the output-pages of a search are removed,
+     * when a changed input-page of it is reloaded.
+     *
+     * @param outputCacheSize the size of the cache for output-pages
+     */
+    public void enableOutputCache(long outputCacheSize) {
+        enableOutputCache(Caffeine.newBuilder().maximumSize(outputCacheSize));
+    }
+
+    /**
+     * initialize a cache for output-pages, that is bounded by their estimated size in bytes instead of their number. The items
+     * are weighed by the default {@link SizeEstimator}.
+     *
+     * @param outputCacheBytes the maximum size of the cache for output-pages in bytes
+     */
+    public void enableWeightedOutputCache(long outputCacheBytes) {
+        enableWeightedOutputCache(outputCacheBytes, SizeEstimator.defaultEstimator());
+    }
+
+    /**
+     * initialize a cache for output-pages, that is bounded by their estimated size in bytes instead of their number. An
+     * output-page is weighed by its items like an input-page, see {@link #enableWeightedCache(long, long, SizeEstimator)}.
+     *
+     * @param outputCacheBytes the maximum size of the cache for output-pages in bytes
+     * @param itemSize         the estimator of the retained size of an item
+     */
+    public void enableWeightedOutputCache(long outputCacheBytes, SizeEstimator<? super T> itemSize) {
+        SizeEstimator<Object> keySize = SizeEstimator.defaultEstimator();
+        enableOutputCache(Caffeine.newBuilder()
+                .maximumWeight(outputCacheBytes)
+                .weigher((PagedSearchWithFilter<U, V> search, PagedSearchResult<T> result) -> SizeEstimator.weight(
+                        SizeEstimator.ENTRY_OVERHEAD + keySize.estimate(search.search()) + keySize.estimate(search.customFilter()) +
+                                itemSize.estimateAll(result.items()))));
+    }
+
+    private void enableOutputCache(Caffeine<? super PagedSearchWithFilter<U, V>, ? super PagedSearchResult<T>> outputCacheBuilder) {
+        outputCache = outputCacheBuilder
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .<PagedSearchWithFilter<U, V>, PagedSearchResult<T>>buildAsync();
+    }
+
+    /**
+     * add a listener, e.g. to export metrics
+     *
+     * @param listener the listener
+     */
+    public void addListener(SearchAdapterListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the metrics of this adapter since its creation
+     */
+    public SearchAdapterMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the statistics of the enabled caches by name: "input", "index", "match" and "output"
+     */
+    public Map<String, CacheStats> cacheStats() {
+        var stats = new LinkedHashMap<String, CacheStats>();
+        if (cacheEnabled) {
+            stats.put("input", inputCache.stats());
+            stats.put("index", indexCache.stats());
+        }
+        if (matchCache != null) {
+            stats.put("match", matchCache.synchronous().stats());
+        }
+        if (outputCache != null) {
+            stats.put("output", outputCache.synchronous().stats());
+        }
+        return stats;
+    }
+
+    /**
+     * enable reading ahead: when the pages of a search are requested one after another, the index of the next output-page
+     * and the input-pages following it are read asynchronously into the caches, so that the next request is served from them.
+     * <p>
+     * Reading ahead only takes effect when caching is enabled.
+     *
+     * @param executor       the executor to read ahead on
+     * @param readAheadPages the number of input-pages to read ahead, beginning at the index of the next output-page
+     */
+    public void enableReadAhead(Executor executor, int readAheadPages) {
+        this.lastRequestedPages = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(SEARCH_TRACKING_SIZE)
+                .build();
+        this.readAheadPages = readAheadPages;
+        this.readAheadExecutor = executor;
+    }
+
+    /**
+     * enable an adaptive fetch-size: the input-pages are read with a fixed base page-size instead of the requested page-size.
+     * Depending on the observed share of items matching the custom filter, the underlying repository is requested
+     * with an aligned multiple of the base page-size, so that a selective filter needs less, but bigger requests.
+     * <p>
+     * The bigger pages are split into input-pages of the base page-size, so the multiple only takes effect when caching is enabled.
+     * Because the input-pages don't depend on the requested page-size any more, clients with different page-sizes share them.
+     *
+     * @param basePageSize  the page-size of the input-pages
+     * @param maxMultiplier the maximum multiple of the base page-size to request, rounded down to a power of two
+     */
+    public void enableAdaptiveFetchSize(long basePageSize, int maxMultiplier) {
+        this.maxFetchMultiplier = Integer.highestOneBit(Math.max(1, maxMultiplier));
+        this.basePageSize = basePageSize;
+    }
+
+    /**
+     * initialize a cache for the items of input-pages matching a custom filter. The matches are stored as bitmaps, that are
+     * much smaller than the items, so this cache may be much bigger than the cache for input-pages. Walking over cached
+     * matches neither tests the items again nor reads input-pages without matching items.
+     * <p>
+     * A custom filter, that {@link #implies(Object, Object) implies} another one with cached matches, only tests the items
+     * matching the other one.
+     * <p>
+     * Cached matches are only applied to the instance of the input-page they were tested from. If the input-page is read again,
+     * e.g. after it was evicted, its items are tested again, because they may have changed.
+     *
+     * @param matchCacheSize the size of the cache for matching items of input-pages
+     */
+    public void enableMatchCache(long matchCacheSize) {
+        matchCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .maximumSize(matchCacheSize)
+                .buildAsync();
+        knownFilters = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(SEARCH_TRACKING_SIZE)
+                .build();
+    }
+
+    /**
+     * enable testing the items of big input-pages in parallel, for filters that are expensive to evaluate
+     *
+     * @param pool      the pool to test the items in
+     * @param threshold the minimum number of items of an input-page to test it in parallel
+     */
+    public void enableParallelFilter(ForkJoinPool pool, int threshold) {
+        this.parallelFilterThreshold = threshold;
+        this.filterPool = pool;
+    }
+
+    /**
+     * enable reading input-pages in parallel, when a walk seeks an offset more than one output-page away from the last cached
+     * index, e.g. when a client jumps to a deep page. The input-pages ahead are read and filtered in batches, the walk counts
+     * their matches and caches the indexes on the way, as if it had read them one after another.
+     * <p>
+     * The size of a batch is limited by the share of matching items observed so far, so that few input-pages are read behind
+     * the requested offset. When the walk reaches the offset, the input-pages ahead not yet read are skipped, the reads already
+     * running are completed and cached.
+     *
+     * @param executor    the executor to read the input-pages with
+     * @param parallelism the maximum number of input-pages to read at once
+     */
+    public void enableParallelSeek(Executor executor, int parallelism) {
+        this.seekParallelism = Math.max(1, parallelism);
+        this.seekExecutor = executor;
+    }
+
     /**
      * find items by a given search-request, page, page-size and a custom filter
      *
@@ -72,31 +646,178 @@ abstract public class SearchWithFilterAdapter<T, U, V> {
      * @return a result-page
      */
     public PagedSearchResult<T> findAndFilter(PagedSearchWithFilter<U, V> pagedSearchWithFilter) {
-        // find position to start reading data for the output-page
-        var index = cachedFindIndex(pagedSearchWithFilter);
-        if (index == Index.NONE) {
-            return new PagedSearchResult<>(List.of(), pagedSearchWithFilter.page(), pagedSearchWithFilter.pageSize());
+        var result = outputCache != null
+                ? load(outputCache, pagedSearchWithFilter, this::filterPage)
+                : filterPage(pagedSearchWithFilter);
+        readAhead(pagedSearchWithFilter);
+        return result;
+    }
+
+    /**
+     * find items asynchronously by a given search-request, page, page-size and a custom filter. The input-pages are read and
+     * filtered on a virtual thread, so that many concurrent requests don't exhaust a thread pool while waiting for the
+     * underlying repository.
+     *
+     * @param pagedSearchWithFilter an extended search-request that contains an extra filter not supported by the underlying repository
+     * @return the future result-page
+     */
+    public CompletableFuture<PagedSearchResult<T>> findAndFilterAsync(PagedSearchWithFilter<U, V> pagedSearchWithFilter) {
+        return CompletableFuture.supplyAsync(() -> findAndFilter(pagedSearchWithFilter), VIRTUAL_THREADS);
+    }
+
+    /**
+     * find consecutive result-pages by a given search-request, first page, page-size and a custom filter. All pages are read by
+     * one walk over the input-pages, that caches the indexes of all of them on the way, e.g. to render or prefetch a range of pages.
+     *
+     * @param pagedSearchWithFilter an extended search-request for the first page
+     * @param pageCount             the number of pages
+     * @return the result-pages, the pages behind the end of the filtered result are empty
+     */
+    public List<PagedSearchResult<T>> findAndFilterPages(PagedSearchWithFilter<U, V> pagedSearchWithFilter, int pageCount) {
+        if (pageCount <= 0) {
+            return List.of();
+        }
+        var pageSize = pagedSearchWithFilter.pageSize();
+        var items = findAndFilterRange(new FilteredRange<>(pagedSearchWithFilter.search(), pagedSearchWithFilter.customFilter(),
+                pagedSearchWithFilter.page() * pageSize, pageCount * pageSize, pageSize));
+        var pages = new ArrayList<PagedSearchResult<T>>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            var from = (int) Math.min(items.size(), i * pageSize);
+            var to = (int) Math.min(items.size(), from + pageSize);
+            // the output-page doesn't keep the whole range reachable from the output cache
+            var page = new PagedSearchResult<>(List.copyOf(items.subList(from, to)), pagedSearchWithFilter.page() + i, pageSize);
+            // the empty pages behind the end of the filtered result are not cached
+            if (outputCache != null && from < items.size()) {
+                outputCache.synchronous().put(new PagedSearchWithFilter<>(pagedSearchWithFilter.search(),
+                        pagedSearchWithFilter.customFilter(), page.page(), pageSize), page);
+            }
+            pages.add(page);
         }
+        return pages;
+    }
 
-        var itemsResult = new ArrayList<T>();
-        // read data as long as is needed and as there is any
-        while (itemsResult.size() < pagedSearchWithFilter.pageSize()) {
-            // read input page
-            var searchResult = cachedFind(new PagedSearch<>(pagedSearchWithFilter.search(), index.page(), pagedSearchWithFilter.pageSize()));
+    /**
+     * find items by a given search-request and a custom filter, beginning at an offset in the filtered result
+     * <p>
+     * The input-pages are read with a fixed page-size of 100 items, or the base page-size of an adaptive fetch-size, independent
+     * of the limit, so that the input-pages and indexes are shared by all ranges.
+     *
+     * @param search       the search-request
+     * @param customFilter the custom filter
+     * @param offset       the position of the first item in the filtered result
+     * @param limit        the maximum number of items
+     * @return the found items
+     */
+    public List<T> findAndFilter(U search, V customFilter, long offset, long limit) {
+        return findAndFilterRange(new FilteredRange<>(search, customFilter, offset, limit));
+    }
 
-            // stop when there is no result
-            if (searchResult.items().isEmpty()) {
-                return new PagedSearchResult<>(itemsResult, pagedSearchWithFilter.page(), pagedSearchWithFilter.pageSize());
+    /**
+     * count the items of a search-request matching a custom filter. All input-pages after the last cached index are read,
+     * the indexes found on the way are cached like for {@link #findAndFilter(PagedSearchWithFilter)}. If caching is enabled,
+     * the count is cached, too, and concurrent counts of the same search and custom filter wait for one count.
+     *
+     * @param search       the search-request
+     * @param customFilter the custom filter
+     * @param pageSize     the page-size of the indexes to cache and, unless an adaptive fetch-size is enabled, of the input-pages -
+     *                     pass the page-size of the clients to share the input-pages with them
+     * @return the number of matching items
+     */
+    public long count(U search, V customFilter, long pageSize) {
+        if (!cacheEnabled) {
+            return countAll(new FilteredRange<>(search, customFilter, Long.MAX_VALUE, pageSize, pageSize));
+        }
+        return load(countCache, new FilterKey<>(search, customFilter), key -> countAll(new FilteredRange<>(search, customFilter, Long.MAX_VALUE, pageSize, pageSize)));
+    }
+
+    /**
+     * estimate the number of items of a search-request matching a custom filter, without reading all input-pages.
+     * <p>
+     * The number of input-items is found by reading a few input-pages in exponentially growing steps and bisecting. The share of
+     * matching items is taken from some input-pages spread over the input and from the items tested by prior requests.
+     * The bounds are an approximate 95% confidence interval. An exact count is returned, if it is cached.
+     *
+     * @param search       the search-request
+     * @param customFilter the custom filter
+     * @param pageSize     the page-size of the input-pages, see {@link #count(Object, Object, long)}
+     * @param samplePages  the number of input-pages to test
+     * @return the estimated number of matching items
+     */
+    public CountEstimate estimateCount(U search, V customFilter, long pageSize, int samplePages) {
+        var key = new FilterKey<>(search, customFilter);
+        if (cacheEnabled) {
+            var count = countCache.synchronous().getIfPresent(key);
+            if (count != null) {
+                return CountEstimate.exact(count);
             }
+        }
+        var range = new FilteredRange<>(search, customFilter, Long.MAX_VALUE, pageSize, pageSize);
 
-            // add all filtered items
-            itemsResult.addAll(searchResult.items().stream().skip(index.item()).filter(item -> test(item, pagedSearchWithFilter.customFilter())).toList());
+        // the number of input-items
+        var inputPageSize = inputPageSize(range);
+        var lastInputPage = findLastInputPage(range);
+        if (lastInputPage < 0) {
+            return CountEstimate.exact(0);
+        }
+        var totalSize = totalSizes.getIfPresent(new InputKey<>(search));
+        var inputItems = totalSize != null ? totalSize : lastInputPage * inputPageSize + cachedFind(range, lastInputPage).items().size();
 
-            // continue reading at the start of the next input-page
-            index = new Index(index.page() + 1, 0);
+        // test input-pages spread over the input
+        var filter = compile(customFilter);
+        var pages = Math.max(1, Math.min(samplePages, lastInputPage + 1));
+        for (long i = 0; i < pages; i++) {
+            cachedMatches(range, (lastInputPage + 1) * i / pages, filter);
         }
-        // return read items, limited to the page-size
-        return new PagedSearchResult<>(itemsResult.stream().limit(pagedSearchWithFilter.pageSize()).toList(), pagedSearchWithFilter.page(), pagedSearchWithFilter.pageSize());
+        var selectivity = selectivities.getIfPresent(key);
+        long tested = selectivity != null ? selectivity.tested() : 0;
+        long matched = selectivity != null ? selectivity.matched() : 0;
+
+        // a cached index proves, that there are more matching items than its offset
+        var lastCheckpoint = cacheEnabled ? findLastCachedIndex(range) : FIRST;
+        var knownItems = lastCheckpoint == FIRST ? 0 : lastCheckpoint.offset() + 1;
+        return CountEstimate.of(tested, matched, inputItems, knownItems);
+    }
+
+    /**
+     * iterate all items of a search-request matching a custom filter, e.g. for an export.
+     * <p>
+     * The input-pages are read one after another when they are needed, so only one input-page is held in memory.
+     * The caches are neither used nor filled.
+     *
+     * @param search        the search-request
+     * @param customFilter  the custom filter
+     * @param inputPageSize the page-size to read the input-pages with
+     * @return an iterator over the filtered items
+     */
+    public Iterator<T> iterator(U search, V customFilter, long inputPageSize) {
+        return new FilteredIterator(search, customFilter, inputPageSize);
+    }
+
+    /**
+     * stream all items of a search-request matching a custom filter, see {@link #iterator(Object, Object, long)}
+     *
+     * @param search        the search-request
+     * @param customFilter  the custom filter
+     * @param inputPageSize the page-size to read the input-pages with
+     * @return a sequential stream of the filtered items
+     */
+    public Stream<T> stream(U search, V customFilter, long inputPageSize) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(search, customFilter, inputPageSize), Spliterator.ORDERED), false);
+    }
+
+    /**
+     * publish all items of a search-request matching a custom filter, see {@link #iterator(Object, Object, long)}
+     * <p>
+     * The input-pages are only read as far as the subscriber requests items. Every subscriber reads the input-pages on its own.
+     *
+     * @param search        the search-request
+     * @param customFilter  the custom filter
+     * @param inputPageSize the page-size to read the input-pages with
+     * @param executor      the executor to read the input-pages and to emit the items on
+     * @return a publisher of the filtered items
+     */
+    public Flow.Publisher<T> publisher(U search, V customFilter, long inputPageSize, Executor executor) {
+        return new IteratorPublisher<>(() -> iterator(search, customFilter, inputPageSize), executor);
     }
 
     // -------- public types
@@ -127,136 +848,977 @@ abstract public class SearchWithFilterAdapter<T, U, V> {
 
     /**
      * The result of a search
+     * <p>
+     * The underlying repository may report the number of all items of the search, so that the adapter knows the last input-page
+     * without requesting the empty one behind it.
      *
-     * @param items    a list of items
-     * @param page     the page-number
-     * @param pageSize the page-size
-     * @param <T>      the items type
+     * @param items     a list of items
+     * @param page      the page-number
+     * @param pageSize  the page-size
+     * @param totalSize the number of all items of the search, or {@link #UNKNOWN_TOTAL_SIZE}
+     * @param <T>       the items type
      */
-    public record PagedSearchResult<T>(List<T> items, long page, long pageSize) {
+    public record PagedSearchResult<T>(List<T> items, long page, long pageSize, long totalSize) {
+        public static final long UNKNOWN_TOTAL_SIZE = -1;
+
+        public PagedSearchResult(List<T> items, long page, long pageSize) {
+            this(items, page, pageSize, UNKNOWN_TOTAL_SIZE);
+        }
+
         public String toString() {
             return "PagedSearchResult:" +
                     "-- Page:      " + page() + "\n" +
                     "-- PageSize:  " + pageSize() + "\n" +
+                    (totalSize() != UNKNOWN_TOTAL_SIZE ? "-- TotalSize: " + totalSize() + "\n" : "") +
                     items().stream().map(Object::toString).map(s -> "-- " + s + "\n").collect(Collectors.joining());
         }
     }
 
+    /**
+     * A count of the filtered items, that may be estimated
+     *
+     * @param count the (estimated) count
+     * @param lower the lower bound of the count
+     * @param upper the upper bound of the count
+     * @param exact true, if the count is exact
+     */
+    public record CountEstimate(long count, long lower, long upper, boolean exact) {
+        // z-value of the 95% confidence interval
+        private static final double Z = 1.96;
+
+        static CountEstimate exact(long count) {
+            return new CountEstimate(count, count, count, true);
+        }
+
+        // estimate by the Wilson score interval of the share of matching items
+        static CountEstimate of(long tested, long matched, long inputItems, long knownItems) {
+            if (tested == 0) {
+                return new CountEstimate(Math.max(knownItems, inputItems / 2), knownItems, inputItems, false);
+            }
+            var share = (double) matched / tested;
+            var z2 = Z * Z;
+            var center = (share + z2 / (2 * tested)) / (1 + z2 / tested);
+            var spread = Z / (1 + z2 / tested) * Math.sqrt(share * (1 - share) / tested + z2 / (4.0 * tested * tested));
+            var lower = Math.max(knownItems, (long) Math.floor(Math.max(0, center - spread) * inputItems));
+            var upper = Math.max(lower, Math.min(inputItems, (long) Math.ceil((center + spread) * inputItems)));
+            var count = Math.min(upper, Math.max(lower, Math.round(share * inputItems)));
+            return new CountEstimate(count, lower, upper, false);
+        }
+    }
+
     // -------- private types
 
+    // the key of a search, independent of any custom filter and pagination
+    record InputKey<U>(U search) {
+    }
+
+    // the latest custom filters of a search with cached matches
+    static class KnownFilters<V> {
+        private final List<V> filters = new ArrayList<>();
+
+        synchronized void add(V customFilter) {
+            filters.remove(customFilter);
+            filters.add(0, customFilter);
+            if (filters.size() > KNOWN_FILTERS_SIZE) {
+                filters.remove(filters.size() - 1);
+            }
+        }
+
+        synchronized List<V> list() {
+            return new ArrayList<>(filters);
+        }
+    }
+
+    // the key of the matching items of an input-page
+    record MatchKey<U, V>(U search, V customFilter, long page, long pageSize) {
+    }
+
     /**
-     * an index points to the input-data that needs to be read next to fill a requested output page
+     * the items of an input-page matching a custom filter
      *
-     * @param page the input page-number
-     * @param item the input item-index (not filtered!)
+     * @param bits  the bitmap of the matching items
+     * @param size  the number of items of the input-page, 0 if the input has ended
+     * @param items the tested items of the input-page - the bitmap only fits these, the same input-page read again may differ
      */
-    record Index(long page, long item) {
-        public static final Index NONE = new Index(-1, -1);
+    record Matches(long[] bits, int size, WeakReference<List<?>> items) {
+        Matches(long[] bits, List<?> items) {
+            this(bits, items.size(), new WeakReference<>(items));
+        }
+
+        // true, if the bitmap was created by testing the given items
+        boolean fits(List<?> items) {
+            return this.items.get() == items;
+        }
+
+        // the position of the next matching item or -1
+        int next(int from) {
+            return Bitmaps.nextSetBit(bits, from);
+        }
+
+        // the number of matching items from a position to the end of the page
+        int count(int from) {
+            return Bitmaps.count(bits, from);
+        }
+    }
+
+    // the matching items of an input-page and its items, that are only read with the matches, if these are not cached
+    record PageMatches<T>(List<T> items, Matches matches) {
+    }
+
+    /**
+     * an index points to the input-data that needs to be read next to fill a requested output range
+     *
+     * @param item the position of the input-item (not filtered!) in the whole input, independent of the input-page-size
+     */
+    record Index(long item) {
+        public static final Index NONE = new Index(-1);
+
+        // the input-page containing the item
+        long page(long inputPageSize) {
+            return item / inputPageSize;
+        }
+
+        // the position of the item in its input-page
+        int itemInPage(long inputPageSize) {
+            return (int) (item % inputPageSize);
+        }
+    }
+
+    // a range of the filtered result, step is the page-size of its input-pages and of the indexes cached by a walk
+    record FilteredRange<U, V>(U search, V customFilter, long offset, long limit, long step) {
+        FilteredRange(U search, V customFilter, long offset, long limit) {
+            this(search, customFilter, offset, limit, RANGE_PAGE_SIZE);
+        }
+
+        static <U, V> FilteredRange<U, V> of(PagedSearchWithFilter<U, V> search) {
+            return new FilteredRange<>(search.search(), search.customFilter(), search.page() * search.pageSize(), search.pageSize(),
+                    search.pageSize());
+        }
+    }
+
+    // the key of a search without its page-number, e.g. to detect sequential access
+    record SearchKey<U, V>(U search, V customFilter, long pageSize) {
+        static <U, V> SearchKey<U, V> of(PagedSearchWithFilter<U, V> search) {
+            return new SearchKey<>(search.search(), search.customFilter(), search.pageSize());
+        }
+    }
+
+    // the key of a search and a custom filter, independent of any pagination
+    record FilterKey<U, V>(U search, V customFilter) {
+        static <U, V> FilterKey<U, V> of(FilteredRange<U, V> range) {
+            return new FilterKey<>(range.search(), range.customFilter());
+        }
+    }
+
+    // the key of an index: the position of an item in the filtered result of a search
+    record OffsetKey<U, V>(U search, V customFilter, long offset) {
+    }
+
+    // counts the tested and matching items of a search and a custom filter, the items of an input-page tested again are not
+    // counted again, because they add no information
+    static class Selectivity {
+        private final LongAdder tested = new LongAdder();
+        private final LongAdder matched = new LongAdder();
+        // the counted input-pages by their page-size
+        private final Map<Long, BitSet> pages = new HashMap<>();
+
+        void add(long inputPage, long inputPageSize, long testedItems, long matchedItems) {
+            synchronized (pages) {
+                var counted = pages.computeIfAbsent(inputPageSize, size -> new BitSet());
+                if (inputPage >= Integer.MAX_VALUE || counted.get((int) inputPage)) {
+                    return;
+                }
+                counted.set((int) inputPage);
+            }
+            tested.add(testedItems);
+            matched.add(matchedItems);
+        }
+
+        long tested() {
+            return tested.sum();
+        }
+
+        long matched() {
+            return matched.sum();
+        }
+    }
+
+    // coordinates the threads searching indexes of the same search and custom filter, so that only one of them reads the input-pages
+    static class Walk {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition progress = lock.newCondition();
+        private boolean active = false;
+
+        // wake up the waiting threads to look for their index again
+        void signalProgress() {
+            lock.lock();
+            try {
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // iterates the filtered items of a search, reading the input-pages directly from the repository
+    private class FilteredIterator implements Iterator<T> {
+        private final U search;
+        private final Predicate<T> filter;
+        private final long inputPageSize;
+
+        private long inputPage = 0;
+        private List<T> items = List.of();
+        private int position = 0;
+        private boolean finished = false;
+        private long totalSize = Long.MAX_VALUE;
+        // the next matching item, looked ahead by hasNext, so that each item is tested only once
+        private T next;
+        private boolean hasNextItem = false;
+
+        FilteredIterator(U search, V customFilter, long inputPageSize) {
+            this.search = search;
+            this.filter = compile(customFilter);
+            this.inputPageSize = inputPageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!hasNextItem && !finished) {
+                // skip the items not matching the filter
+                while (position < items.size()) {
+                    var item = items.get(position++);
+                    if (filter.test(item)) {
+                        next = item;
+                        hasNextItem = true;
+                        return true;
+                    }
+                }
+                // read the next input-page, an empty page or the reported number of input-items is the end
+                if (inputPage * inputPageSize >= totalSize) {
+                    finished = true;
+                    continue;
+                }
+                var result = upstreamFind(new PagedSearch<>(search, inputPage++, inputPageSize));
+                items = result.items();
+                position = 0;
+                finished = items.isEmpty();
+                if (result.totalSize() != PagedSearchResult.UNKNOWN_TOTAL_SIZE) {
+                    totalSize = result.totalSize();
+                }
+            }
+            return hasNextItem;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var item = next;
+            next = null;
+            hasNextItem = false;
+            return item;
+        }
     }
 
     // -------- private methods
 
+    // read an output-page
+    private PagedSearchResult<T> filterPage(PagedSearchWithFilter<U, V> pagedSearchWithFilter) {
+        var items = findAndFilterRange(FilteredRange.of(pagedSearchWithFilter));
+        return new PagedSearchResult<>(items, pagedSearchWithFilter.page(), pagedSearchWithFilter.pageSize());
+    }
+
+    // read the requested range of the filtered result
+    private List<T> findAndFilterRange(FilteredRange<U, V> range) {
+        if (range.offset() < 0 || range.limit() <= 0) {
+            return List.of();
+        }
+        // find position to start reading data for the output-page, a walk reads the items of the output-page on the way
+        var outputPage = new OutputPage<T>();
+        var index = cachedFindIndex(range, outputPage);
+        if (outputPage.complete) {
+            listeners.forEach(listener -> listener.onOutputPage(outputPage.inputPages, outputPage.items.size()));
+            return List.copyOf(outputPage.items);
+        }
+        if (index == Index.NONE) {
+            return List.of();
+        }
+
+        var inputPageSize = inputPageSize(range);
+        var inputPage = index.page(inputPageSize);
+        var firstItem = index.itemInPage(inputPageSize);
+
+        var filter = compile(range.customFilter());
+        var itemsResult = new ArrayList<T>();
+        var firstInputPage = inputPage;
+        // read data as long as is needed and as there is any
+        while (itemsResult.size() < range.limit()) {
+            // read and filter input page, with cached matches the input-page is only needed if any item matches
+            var pageMatches = readMatches(range, inputPage, filter);
+            var items = pageMatches.items();
+            var matches = pageMatches.matches();
+
+            // stop when there is no result
+            if (matches.size() == 0) {
+                break;
+            }
+
+            // add all filtered items
+            if (matches.next(firstItem) >= 0) {
+                items = items != null ? items : cachedFind(range, inputPage).items();
+                matches = fitMatches(range, inputPage, matches, items, filter);
+                for (int i = matches.next(firstItem); i >= 0 && i < items.size() && itemsResult.size() < range.limit(); i = matches.next(i + 1)) {
+                    // a range of several output-pages caches the indexes of the pages it contains
+                    var offset = range.offset() + itemsResult.size();
+                    if (cacheEnabled && offset > range.offset() && offset % range.step() == 0) {
+                        cacheIndex(range, offset, new Index(inputPage * inputPageSize + i));
+                    }
+                    itemsResult.add(items.get(i));
+                }
+            }
+
+            // continue reading at the start of the next input-page
+            inputPage++;
+            firstItem = 0;
+        }
+        var inputPages = inputPage - firstInputPage;
+        listeners.forEach(listener -> listener.onOutputPage(inputPages, itemsResult.size()));
+        // return read items, limited to the page-size
+        return itemsResult.stream().limit(range.limit()).toList();
+    }
+
+    // read the next output-page asynchronously into the caches, if the pages of a search are requested sequentially
+    private void readAhead(PagedSearchWithFilter<U, V> search) {
+        if (!cacheEnabled || readAheadExecutor == null) {
+            return;
+        }
+        var lastRequestedPage = lastRequestedPages.asMap().put(SearchKey.of(search), search.page());
+        if (lastRequestedPage == null || lastRequestedPage != search.page() - 1) {
+            return;
+        }
+        var next = new PagedSearchWithFilter<>(search.search(), search.customFilter(), search.page() + 1, search.pageSize());
+        // the next page is already being read
+        if (!pendingReadAheads.add(next)) {
+            return;
+        }
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    prefetch(FilteredRange.of(next));
+                } catch (RuntimeException e) {
+                    log.warn("reading ahead {} failed", next, e);
+                } finally {
+                    pendingReadAheads.remove(next);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReadAheads.remove(next);
+        }
+    }
+
+    // fill the caches with the index of a range and the input-pages beginning there
+    private void prefetch(FilteredRange<U, V> range) {
+        var index = cachedFindIndex(range, null);
+        if (index == Index.NONE) {
+            return;
+        }
+        var firstInputPage = index.page(inputPageSize(range));
+        for (long inputPage = firstInputPage; inputPage < firstInputPage + readAheadPages; inputPage++) {
+            if (cachedFind(range, inputPage).items().isEmpty()) {
+                return;
+            }
+        }
+    }
+
     // use cache for input pages
     private PagedSearchResult<T> cachedFind(PagedSearch<U> pagedSearch) {
         if (cacheEnabled) {
-            return inputCache.get(pagedSearch, this::find);
+            return cachedLoad(pagedSearch);
+        }
+        return upstreamFind(pagedSearch);
+    }
+
+    // read an input-page into the input cache
+    private PagedSearchResult<T> cachedLoad(PagedSearch<U> pagedSearch) {
+        return load(asyncInputCache, pagedSearch, this::findCompressed);
+    }
+
+    // load a value into a cache: concurrent requests of the same key wait for one load, that runs outside of the cache's locks,
+    // so that a blocking load doesn't pin the carrier thread of a virtual thread and may use the other caches
+    private static <K, R> R load(AsyncCache<K, R> cache, K key, Function<? super K, ? extends R> loader) {
+        var loading = new CompletableFuture<R>();
+        var result = cache.get(key, (k, executor) -> loading);
+        if (result == loading) {
+            try {
+                loading.complete(loader.apply(key));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+            }
         }
-        return find(pagedSearch);
+        return join(result);
     }
 
-    // use cache for indexes
-    private Index cachedFindIndex(PagedSearchWithFilter<U, V> search) {
+    // wait for a future and rethrow its failure unwrapped
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // read an input-page from the compressed cache, or from the underlying repository if it is not there
+    private PagedSearchResult<T> findCompressed(PagedSearch<U> pagedSearch) {
+        var result = takeCompressed(pagedSearch);
+        return result != null ? result : upstreamFind(pagedSearch);
+    }
+
+    // take an input-page out of the compressed cache, keeping the time it was read
+    private PagedSearchResult<T> takeCompressed(PagedSearch<U> pagedSearch) {
+        var stored = compressedInputCache != null ? compressedInputCache.take(pagedSearch) : null;
+        if (stored == null) {
+            return null;
+        }
+        writeTimes.put(stored.page(), stored.writeTime());
+        return stored.page();
+    }
+
+    // the time an input-page was read from the underlying repository
+    private long writeTime(PagedSearchResult<T> result) {
+        var writeTime = writeTimes.getIfPresent(result);
+        return writeTime != null ? writeTime : System.nanoTime();
+    }
+
+    // delegate a search-request to the underlying repository and report it to the listeners
+    private PagedSearchResult<T> upstreamFind(PagedSearch<U> pagedSearch) {
+        var start = System.nanoTime();
+        try {
+            var result = join(findAsync(pagedSearch));
+            var nanos = System.nanoTime() - start;
+            writeTimes.put(result, start);
+            if (result.totalSize() != PagedSearchResult.UNKNOWN_TOTAL_SIZE) {
+                totalSizes.put(new InputKey<>(pagedSearch.search()), result.totalSize());
+            }
+            listeners.forEach(listener -> listener.onUpstreamCall(nanos, result.items().size(), null));
+            return result;
+        } catch (RuntimeException e) {
+            var nanos = System.nanoTime() - start;
+            listeners.forEach(listener -> listener.onUpstreamCall(nanos, 0, e));
+            throw e;
+        }
+    }
+
+    // read an input-page of a search, the page-number is based on the input-page-size
+    private PagedSearchResult<T> cachedFind(FilteredRange<U, V> range, long inputPage) {
+        var pagedSearch = new PagedSearch<>(range.search(), inputPage, inputPageSize(range));
+        // an input-page behind the reported number of input-items is empty, there is no need to request it
+        var totalSize = totalSizes.getIfPresent(new InputKey<>(range.search()));
+        if (totalSize != null && inputPage * pagedSearch.pageSize() >= totalSize) {
+            return new PagedSearchResult<>(List.of(), inputPage, pagedSearch.pageSize(), totalSize);
+        }
+        if (basePageSize <= 0 || !cacheEnabled) {
+            return cachedFind(pagedSearch);
+        }
+        // a cached or loading input-page
+        var cached = asyncInputCache.getIfPresent(pagedSearch);
+        if (cached != null) {
+            return join(cached);
+        }
+        var multiplier = fetchMultiplier(range);
+        if (multiplier == 1) {
+            return cachedLoad(pagedSearch);
+        }
+        // the input-page is loaded by this thread, unless another one has started loading it meanwhile
+        var loading = new CompletableFuture<PagedSearchResult<T>>();
+        cached = asyncInputCache.asMap().putIfAbsent(pagedSearch, loading);
+        if (cached != null) {
+            return join(cached);
+        }
+        try {
+            var result = takeCompressed(pagedSearch);
+            if (result == null) {
+                result = findBlock(range, inputPage, multiplier, loading);
+            }
+            loading.complete(result);
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+        }
+        return join(loading);
+    }
+
+    // request the aligned bigger page containing an input-page and split it into input-pages. The other input-pages of it, that
+    // are neither cached nor loading, are registered as loading in the input cache first, so that concurrent requests of them
+    // wait for this request instead of requesting the bigger page again.
+    private PagedSearchResult<T> findBlock(FilteredRange<U, V> range, long inputPage, int multiplier,
+                                           CompletableFuture<PagedSearchResult<T>> loading) {
+        var firstInputPage = inputPage / multiplier * multiplier;
+        var loadings = new HashMap<Long, CompletableFuture<PagedSearchResult<T>>>();
+        for (long page = firstInputPage; page < firstInputPage + multiplier; page++) {
+            var pageLoading = page == inputPage ? loading : new CompletableFuture<PagedSearchResult<T>>();
+            if (page == inputPage || asyncInputCache.asMap().putIfAbsent(new PagedSearch<>(range.search(), page, basePageSize), pageLoading) == null) {
+                loadings.put(page, pageLoading);
+            }
+        }
+        try {
+            var bigResult = upstreamFind(new PagedSearch<>(range.search(), inputPage / multiplier, basePageSize * multiplier));
+            var items = bigResult.items();
+            PagedSearchResult<T> result = null;
+            for (int i = 0; i < multiplier; i++) {
+                var from = (int) Math.min(items.size(), i * basePageSize);
+                var to = (int) Math.min(items.size(), from + basePageSize);
+                var splitResult = new PagedSearchResult<>(List.copyOf(items.subList(from, to)), firstInputPage + i, basePageSize, bigResult.totalSize());
+                writeTimes.put(splitResult, writeTime(bigResult));
+                if (firstInputPage + i == inputPage) {
+                    result = splitResult;
+                } else if (loadings.containsKey(firstInputPage + i)) {
+                    loadings.get(firstInputPage + i).complete(splitResult);
+                }
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            // the failed input-pages are removed from the input cache, the requested one is failed by the caller
+            loadings.forEach((page, pageLoading) -> {
+                if (pageLoading != loading) {
+                    pageLoading.completeExceptionally(e);
+                }
+            });
+            throw e;
+        }
+    }
+
+    // the page-size to read input-pages with
+    private long inputPageSize(FilteredRange<U, V> range) {
+        return basePageSize > 0 ? basePageSize : range.step();
+    }
+
+    // the multiple of the base page-size to request, so that an output-page can probably be filled by one request
+    private int fetchMultiplier(FilteredRange<U, V> range) {
+        var selectivity = selectivities.getIfPresent(FilterKey.of(range));
+        if (selectivity == null || selectivity.tested() == 0) {
+            return 1;
+        }
+        var expectedItemsPerPage = (double) selectivity.matched() / selectivity.tested() * basePageSize;
+        var neededPages = expectedItemsPerPage > 0 ? Math.ceil(range.limit() / expectedItemsPerPage) : maxFetchMultiplier;
+        if (neededPages >= maxFetchMultiplier) {
+            return maxFetchMultiplier;
+        }
+        // round up to a power of two, so that the requested pages are aligned
+        return neededPages <= 1 ? 1 : Integer.highestOneBit((int) neededPages - 1) << 1;
+    }
+
+    // read and filter an input-page, with cached matches the input-page is not read
+    private PageMatches<T> readMatches(FilteredRange<U, V> range, long inputPage, Predicate<T> filter) {
+        PageMatches<T> pageMatches;
+        if (matchCache != null) {
+            pageMatches = new PageMatches<>(null, cachedMatches(range, inputPage, filter));
+        } else {
+            var items = cachedFind(range, inputPage).items();
+            pageMatches = new PageMatches<>(items, testItems(range, inputPage, items, filter));
+        }
+        // count the matching items of the input-page, unless the input has ended
+        if (cacheEnabled && pageMatches.matches().size() > 0) {
+            matchCounts.get(new SearchKey<>(range.search(), range.customFilter(), inputPageSize(range)), key -> new MatchCounts())
+                    .put(inputPage, pageMatches.matches().count(0));
+        }
+        return pageMatches;
+    }
+
+    // read and filter an input-page of a walk, that is still the given number of filtered items away from the requested offset.
+    // A parallel seek reads the following input-pages ahead, as many as probably needed to reach the requested offset.
+    private PageMatches<T> seekMatches(FilteredRange<U, V> range, long inputPage, long remaining, Predicate<T> filter,
+                                       SeekAhead<T> ahead) {
+        var future = ahead.pages.remove(inputPage);
+        if (future != null) {
+            return join(future);
+        }
+        if (seekExecutor == null || remaining <= range.step()) {
+            return readMatches(range, inputPage, filter);
+        }
+        var inputPageSize = inputPageSize(range);
+        var totalSize = totalSizes.getIfPresent(new InputKey<>(range.search()));
+        var lastInputPage = inputPage + seekPages(range, remaining) - 1;
+        for (long page = inputPage + 1; page <= lastInputPage && (totalSize == null || page * inputPageSize < totalSize); page++) {
+            var aheadPage = page;
+            try {
+                ahead.pages.put(aheadPage, CompletableFuture.supplyAsync(
+                        () -> ahead.cancelled ? null : readMatches(range, aheadPage, filter), seekExecutor));
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        return readMatches(range, inputPage, filter);
+    }
+
+    // the number of input-pages to read at once to find the given number of filtered items, by the share of matching items
+    private int seekPages(FilteredRange<U, V> range, long remaining) {
+        var selectivity = selectivities.getIfPresent(FilterKey.of(range));
+        if (selectivity == null || selectivity.matched() == 0) {
+            return seekParallelism;
+        }
+        var expectedItemsPerPage = (double) selectivity.matched() / selectivity.tested() * inputPageSize(range);
+        return (int) Math.max(1, Math.min(seekParallelism, Math.ceil(remaining / expectedItemsPerPage)));
+    }
+
+    // the matching items of an input-page, from the match cache or by testing the items of the input-page
+    private Matches cachedMatches(FilteredRange<U, V> range, long inputPage, Predicate<T> filter) {
+        if (matchCache == null) {
+            return testItems(range, inputPage, cachedFind(range, inputPage).items(), filter);
+        }
+        var matches = load(matchCache, new MatchKey<>(range.search(), range.customFilter(), inputPage, inputPageSize(range)),
+                key -> refineMatches(range, inputPage, filter));
+        knownFilters.get(new InputKey<>(range.search()), key -> new KnownFilters<>()).add(range.customFilter());
+        return matches;
+    }
+
+    // test the items of an input-page, that match a looser custom filter with cached matches, or all items if there is none
+    private Matches refineMatches(FilteredRange<U, V> range, long inputPage, Predicate<T> filter) {
+        var filters = knownFilters.getIfPresent(new InputKey<>(range.search()));
+        for (var looserFilter : filters != null ? filters.list() : List.<V>of()) {
+            if (Objects.equals(looserFilter, range.customFilter()) || !implies(range.customFilter(), looserFilter)) {
+                continue;
+            }
+            var looserMatches = matchCache.synchronous().getIfPresent(new MatchKey<>(range.search(), looserFilter, inputPage, inputPageSize(range)));
+            if (looserMatches == null) {
+                continue;
+            }
+            // without any looser match, the input-page is not needed
+            if (looserMatches.next(0) < 0) {
+                return looserMatches;
+            }
+            // the looser matches only fit the items they were tested from
+            var items = cachedFind(range, inputPage).items();
+            if (!looserMatches.fits(items)) {
+                continue;
+            }
+            var bits = Bitmaps.create(items.size());
+            for (int i = looserMatches.next(0); i >= 0; i = looserMatches.next(i + 1)) {
+                if (filter.test(items.get(i))) {
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+            var matches = new Matches(bits, items);
+            observe(range, inputPage, items.size(), matches.count(0));
+            return matches;
+        }
+        return testItems(range, inputPage, cachedFind(range, inputPage).items(), filter);
+    }
+
+    // test the items of an input-page
+    private Matches testItems(FilteredRange<U, V> range, long inputPage, List<T> items, Predicate<T> filter) {
+        var bits = testBatch(items, filter);
+        var matches = new Matches(bits, items);
+        observe(range, inputPage, items.size(), matches.count(0));
+        return matches;
+    }
+
+    // the matches of an input-page fitting its items: cached matches of another instance of the input-page, e.g. of one read
+    // again after it was evicted, may belong to changed items, then the items are tested again
+    private Matches fitMatches(FilteredRange<U, V> range, long inputPage, Matches matches, List<T> items, Predicate<T> filter) {
+        if (matches.fits(items)) {
+            return matches;
+        }
+        var fitting = testItems(range, inputPage, items, filter);
+        if (matchCache != null) {
+            matchCache.synchronous().put(new MatchKey<>(range.search(), range.customFilter(), inputPage, inputPageSize(range)), fitting);
+        }
+        return fitting;
+    }
+
+    // remember how many of the tested items of an input-page matched the custom filter
+    private void observe(FilteredRange<U, V> range, long inputPage, long testedItems, long matchedItems) {
+        selectivities.get(FilterKey.of(range), key -> new Selectivity()).add(inputPage, inputPageSize(range), testedItems, matchedItems);
+        listeners.forEach(listener -> listener.onFilter(testedItems, matchedItems));
+    }
+
+    // use cache for indexes, a walk over the input-pages fills the output-page on the way, if given
+    private Index cachedFindIndex(FilteredRange<U, V> range, OutputPage<T> outputPage) {
         if (!cacheEnabled) {
-            return this.findIndex(search, FIRST);
+            return this.findIndex(range, FIRST, outputPage);
         }
         // When iterating the input-pages, all found indexes will be cached.
         // To do this, the cache-method get(search, Function<search, index>) cannot be used,
         // because it is not allowed to add cache values within the lambda-function.
-        var result = indexCache.getIfPresent(search);
+        var result = indexCache.getIfPresent(new OffsetKey<>(range.search(), range.customFilter(), range.offset()));
         if (result != null) {
             return result;
         }
-        // beginn the iteration at the last cached index prior to the requested
-        return findIndex(search, findLastCachedIndex(search));
+        // Only one thread at a time walks the input-pages of a search, the others wait for the indexes it caches.
+        var walk = walks.get(FilterKey.of(range), key -> new Walk());
+        var interrupted = false;
+        walk.lock.lock();
+        try {
+            while (walk.active) {
+                walk.progress.await();
+                result = indexCache.getIfPresent(new OffsetKey<>(range.search(), range.customFilter(), range.offset()));
+                if (result != null) {
+                    return result;
+                }
+            }
+            walk.active = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+        } finally {
+            walk.lock.unlock();
+        }
+        if (interrupted) {
+            // stop waiting and walk on its own, outside of the lock, so that the active walk can still signal its progress
+            return findIndex(range, findStart(range), outputPage);
+        }
+        try {
+            // beginn the iteration at the last cached index prior to the requested
+            return findIndex(range, findStart(range), outputPage);
+        } finally {
+            walk.lock.lock();
+            try {
+                walk.active = false;
+                walk.progress.signalAll();
+            } finally {
+                walk.lock.unlock();
+            }
+        }
     }
 
-    // A record for internal use that holds the last cached output-page and index previous to the requested output-page.
-    record OutputPageAndIndex(Long page, Index index) {
-        public static final OutputPageAndIndex FIRST = new OutputPageAndIndex(0L, new Index(0, 0));
+    // A record for internal use that holds the last cached offset in the filtered result and its index previous to the requested offset.
+    record OffsetAndIndex(long offset, Index index) {
+        public static final OffsetAndIndex FIRST = new OffsetAndIndex(0, new Index(0));
+    }
+
+    // find the start of a walk to the requested offset: the last cached index or the start of the input-page containing the
+    // offset by the counts of matching items, whatever is nearer
+    private OffsetAndIndex findStart(FilteredRange<U, V> range) {
+        var lastCachedIndex = findLastCachedIndex(range);
+        var inputPageSize = inputPageSize(range);
+        var counts = matchCounts.getIfPresent(new SearchKey<>(range.search(), range.customFilter(), inputPageSize));
+        if (counts == null) {
+            return lastCachedIndex;
+        }
+        var page = counts.pageOf(range.offset());
+        var offset = counts.prefix(page);
+        // the items in front of the input-page are known, it is read from its first item on
+        return offset > lastCachedIndex.offset() ? new OffsetAndIndex(offset, new Index(page * inputPageSize)) : lastCachedIndex;
     }
 
-    // find the last index in cache beginning from the requested output-page -1 down to 0
-    OutputPageAndIndex findLastCachedIndex(PagedSearchWithFilter<U, V> search) {
-        // the index for ouput-page 0 is always (0, 0)
-        if (search.page() == 0) {
+    // find the last index in cache prior to the requested offset
+    OffsetAndIndex findLastCachedIndex(FilteredRange<U, V> range) {
+        // the index for offset 0 is always 0
+        if (range.offset() == 0) {
             return FIRST;
         }
         // find last cached index
-        var i = search.page();
-        PagedSearchWithFilter<U, V> key;
-        do {
-            i--;
-            key = new PagedSearchWithFilter<>(search.search(), search.customFilter(), i, search.pageSize());
-        } while (i > 0 && !indexCache.asMap().containsKey(key));
-        // nothing found? start by 0 / (0, 0)
-        if (i == 0) {
-            return FIRST;
+        var key = FilterKey.of(range);
+        var checkpoint = checkpoints.lower(key, range.offset());
+        while (checkpoint != null) {
+            // the checkpoints may not yet know about a removal from the index cache
+            var index = indexCache.getIfPresent(new OffsetKey<>(range.search(), range.customFilter(), checkpoint.getKey()));
+            if (index != null) {
+                // start searching there
+                return new OffsetAndIndex(checkpoint.getKey(), index);
+            }
+            checkpoints.remove(key, checkpoint.getKey(), checkpoint.getValue());
+            checkpoint = checkpoints.lower(key, checkpoint.getKey());
         }
-        // start searching there
-        return new OutputPageAndIndex(i, indexCache.getIfPresent(key));
+        // nothing found? start by 0
+        return FIRST;
     }
 
-    // find the index (input-page, input-item-index) for a requested output-page, beginning at a known output-page
-    // and index
-    private Index findIndex(PagedSearchWithFilter<U, V> search, OutputPageAndIndex start) {
-        // counts up to the requested page
-        long outputPage = start.page();
-        var index = start.index();
+    // cache an index and let the threads waiting for the walk look for their index
+    private void cacheIndex(FilteredRange<U, V> range, long offset, Index index) {
+        var key = FilterKey.of(range);
+        indexCache.put(new OffsetKey<>(range.search(), range.customFilter(), offset), index);
+        checkpoints.put(key, offset, index);
+        var walk = walks.getIfPresent(key);
+        if (walk != null) {
+            walk.signalProgress();
+        }
+    }
 
-        // holds the position in the output-page, where the next data would be stored
-        long outputItemIndex = 0;
+    // count all filtered items, beginning at the last cached index
+    private long countAll(FilteredRange<U, V> range) {
+        return walk(range, cacheEnabled ? findStart(range) : FIRST, null).filteredItems();
+    }
 
-        // the current input-page
-        long inputPage = index.page();
+    // find the last input-page, that contains items, or -1 if there is none
+    private long findLastInputPage(FilteredRange<U, V> range) {
+        var firstPage = cachedFind(range, 0);
+        if (firstPage.items().isEmpty()) {
+            return -1;
+        }
+        // the reported number of input-items tells the last input-page right away
+        if (firstPage.totalSize() != PagedSearchResult.UNKNOWN_TOTAL_SIZE) {
+            return firstPage.totalSize() > 0 ? (firstPage.totalSize() - 1) / inputPageSize(range) : -1;
+        }
+        // double the page-number until an empty page is found
+        long nonEmpty = 0;
+        long empty = 1;
+        while (!cachedFind(range, empty).items().isEmpty()) {
+            nonEmpty = empty;
+            empty *= 2;
+        }
+        // bisect between the last non-empty and the first empty page
+        while (empty - nonEmpty > 1) {
+            var middle = (nonEmpty + empty) >>> 1;
+            if (cachedFind(range, middle).items().isEmpty()) {
+                empty = middle;
+            } else {
+                nonEmpty = middle;
+            }
+        }
+        return nonEmpty;
+    }
 
-        while (outputPage < search.page()) {
-            // read next data from cache or repository
-            var items = cachedFind(new PagedSearch<>(search.search(), inputPage, search.pageSize())).items();
+    // the end of a walk: the index of the requested offset and the number of filtered items in front of it,
+    // or Index.NONE and the number of all filtered items, if the input ended before - and the number of read input-pages
+    record WalkResult(Index index, long filteredItems, long inputPages) {
+    }
 
-            // no more items found? Then there is no date for the requested page
-            if (items.isEmpty()) {
-                return Index.NONE;
-            }
+    // find the index of the input-item for a requested offset in the filtered result, beginning at a known offset and index
+    private Index findIndex(FilteredRange<U, V> range, OffsetAndIndex start, OutputPage<T> outputPage) {
+        return walk(range, start, outputPage).index();
+    }
+
+    // the items of an output-page, read by a walk in the same pass as its index
+    static class OutputPage<T> {
+        private final List<T> items = new ArrayList<>();
+        // the number of input-pages read from the index on
+        private long inputPages;
+        // true, if the walk reached the index and read the items up to the limit or the end of the input
+        private boolean complete;
+    }
+
+    // the input-pages read ahead by a parallel seek of a walk
+    static class SeekAhead<T> {
+        private final Map<Long, CompletableFuture<PageMatches<T>>> pages = new HashMap<>();
+        // set when the walk ends, the input-pages ahead not yet read are skipped, the reads already running are completed
+        private volatile boolean cancelled = false;
+
+        void cancel() {
+            cancelled = true;
+            pages.values().forEach(future -> future.cancel(false));
+        }
+    }
+
+    // walk the input-pages up to the requested offset in the filtered result, beginning at a known offset and index,
+    // and read the items of the range from there on, if an output-page is given
+    private WalkResult walk(FilteredRange<U, V> range, OffsetAndIndex start, OutputPage<T> outputPage) {
+        var result = walkFrom(range, start, outputPage);
+        var inputPages = result.inputPages();
+        listeners.forEach(listener -> listener.onWalk(result.filteredItems() - start.offset(), inputPages));
+        return result;
+    }
 
-            // map the data to indexes and filter them
-            var inputIndexes = IntStream.iterate(0, i -> i < items.size(), i -> i + 1).filter(i -> test(items.get(i), search.customFilter()))
-                    .boxed().toList();
+    // walk the input-pages, see walk(range, start, outputPage)
+    private WalkResult walkFrom(FilteredRange<U, V> range, OffsetAndIndex start, OutputPage<T> outputPage) {
+        // the start index is already the requested one
+        if (start.offset() == range.offset()) {
+            return new WalkResult(start.index(), start.offset(), 0);
+        }
 
-            // update index in output-page
-            outputItemIndex += inputIndexes.size();
+        // counts the filtered items in front of the current input-item
+        long filteredItems = start.offset();
 
-            // is the current output page full?
-            if (outputItemIndex > search.pageSize()) {
-                // update output-page
-                outputPage += outputItemIndex / search.pageSize();
+        // the current input-page and the first item to read in it
+        var inputPageSize = inputPageSize(range);
+        long firstInputPage = start.index().page(inputPageSize);
+        long inputPage = firstInputPage;
+        int firstItem = start.index().itemInPage(inputPageSize);
 
-                // update output-index
-                outputItemIndex = outputItemIndex % search.pageSize();
+        // the index of the requested offset, when it is reached
+        Index found = null;
+        long foundInputPage = 0;
 
-                // recalculate the requested index
-                index = new Index(inputPage, inputIndexes.get((int) (search.pageSize() - outputItemIndex - 1)));
+        var filter = compile(range.customFilter());
+        // the input-pages read ahead by a parallel seek
+        var ahead = new SeekAhead<T>();
+        try {
+            while (true) {
+                // read and filter next data from cache or repository, the positions of the matching items are the set bits
+                // with cached matches the input-page is only needed to read the items of the output-page
+                var pageMatches = seekMatches(range, inputPage, range.offset() - filteredItems, filter, ahead);
+                var items = pageMatches.items();
+                var matches = pageMatches.matches();
 
-                // add all found indexes to cache
-                if (cacheEnabled) {
-                    indexCache.put(new PagedSearchWithFilter<>(search.search(), search.customFilter(), outputPage, search.pageSize()), index);
+                // no more items found? Then there is no date for the requested page, or the output-page ends here
+                if (matches.size() == 0) {
+                    if (found != null) {
+                        outputPage.inputPages = inputPage - foundInputPage + 1;
+                        outputPage.complete = true;
+                        return new WalkResult(found, range.offset(), inputPage - firstInputPage + 1);
+                    }
+                    return new WalkResult(Index.NONE, filteredItems, inputPage - firstInputPage + 1);
                 }
-            }
 
-            // load the next input page
-            inputPage++;
-        }
+                // skip an input-page by the count of its matches, if it contains neither the requested offset nor an index to cache
+                var nextIndex = Math.min(range.offset(), (filteredItems + range.step() - 1) / range.step() * range.step());
+                var count = matches.count(firstItem);
+                if (found == null && filteredItems + count <= nextIndex) {
+                    filteredItems += count;
+                    inputPage++;
+                    firstItem = 0;
+                    continue;
+                }
+
+                // the items of the output-page are read with the matches, the cached matches must fit them
+                if (outputPage != null && (found != null || filteredItems + count > range.offset())) {
+                    items = items != null ? items : cachedFind(range, inputPage).items();
+                    matches = fitMatches(range, inputPage, matches, items, filter);
+                }
+
+                for (int inputIndex = matches.next(firstItem); inputIndex >= 0; inputIndex = matches.next(inputIndex + 1)) {
+                    // is the filtered item the requested one or does it start a range of the requested size?
+                    if (found == null && (filteredItems == range.offset() || filteredItems % range.step() == 0)) {
+                        var index = new Index(inputPage * inputPageSize + inputIndex);
 
-        // the requested output-page is reached, return the current calculated input-index
-        return index;
+                        // add all found indexes to cache, except the index of offset 0, that is always known
+                        if (cacheEnabled && filteredItems > 0) {
+                            cacheIndex(range, filteredItems, index);
+                        }
+
+                        // the requested offset is reached, return the current calculated input-index or read the output-page from there
+                        if (filteredItems == range.offset()) {
+                            if (outputPage == null) {
+                                return new WalkResult(index, filteredItems, inputPage - firstInputPage + 1);
+                            }
+                            found = index;
+                            foundInputPage = inputPage;
+                        }
+                    }
+                    if (found != null) {
+                        // a range of several output-pages caches the indexes of the pages it contains
+                        if (cacheEnabled && filteredItems > range.offset() && filteredItems % range.step() == 0) {
+                            cacheIndex(range, filteredItems, new Index(inputPage * inputPageSize + inputIndex));
+                        }
+                        items = items != null ? items : cachedFind(range, inputPage).items();
+                        if (inputIndex < items.size()) {
+                            outputPage.items.add(items.get(inputIndex));
+                        }
+                        if (outputPage.items.size() >= range.limit()) {
+                            // the next match in this input-page starts the following range, its index is known for free
+                            var next = matches.next(inputIndex + 1);
+                            if (cacheEnabled && next >= 0) {
+                                cacheIndex(range, filteredItems + 1, new Index(inputPage * inputPageSize + next));
+                            }
+                            outputPage.inputPages = inputPage - foundInputPage + 1;
+                            outputPage.complete = true;
+                            return new WalkResult(found, range.offset(), inputPage - firstInputPage + 1);
+                        }
+                    }
+                    filteredItems++;
+                }
+
+                // load the next input page
+                inputPage++;
+                firstItem = 0;
+            }
+        } finally {
+            ahead.cancel();
+        }
     }
 }
@@ -0,0 +1,85 @@
+package de.dreierschach.searchadapter.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values with buckets of powers of two, e.g. for latencies in nanoseconds. Percentiles
+ * are estimated by the upper bound of their bucket, so they are at most twice the real value.
+ */
+public class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * add a value
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        var nonNegative = Math.max(0, value);
+        buckets.incrementAndGet(Math.max(0, 63 - Long.numberOfLeadingZeros(nonNegative)));
+        count.increment();
+        sum.add(nonNegative);
+        max.accumulate(nonNegative);
+    }
+
+    /**
+     * @return the number of values
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of all values
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the maximum value, or 0 if there is none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean value, or 0 if there is none
+     */
+    public double mean() {
+        var n = count();
+        return n > 0 ? (double) sum() / n : 0;
+    }
+
+    /**
+     * estimate a percentile
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound of the bucket containing the percentile, or 0 if there is no value
+     */
+    public long percentile(double percentile) {
+        var n = count();
+        if (n == 0) {
+            return 0;
+        }
+        var rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < 64; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(max(), i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+        }
+        return max();
+    }
+
+    @Override
+    public String toString() {
+        return "count=%d mean=%.1f p50=%d p99=%d max=%d".formatted(count(), mean(), percentile(50), percentile(99), max());
+    }
+}
@@ -0,0 +1,45 @@
+package de.dreierschach.searchadapter.metrics;
+
+/**
+ * Listens to the work of a search-adapter, e.g. to export metrics. All methods are called synchronously by the requesting
+ * threads, so they should return quickly and must be thread-safe.
+ */
+public interface SearchAdapterListener {
+
+    /**
+     * a search-request was delegated to the underlying repository
+     *
+     * @param nanos   the duration of the request in nanoseconds
+     * @param items   the number of returned items, or 0 if the request failed
+     * @param failure the failure of the request, or null if it succeeded
+     */
+    default void onUpstreamCall(long nanos, int items, Throwable failure) {
+    }
+
+    /**
+     * items of an input-page were tested by the custom filter
+     *
+     * @param testedItems  the number of tested items
+     * @param matchedItems the number of items matching the custom filter
+     */
+    default void onFilter(long testedItems, long matchedItems) {
+    }
+
+    /**
+     * the input-pages were walked from the nearest checkpoint to a requested position
+     *
+     * @param distance   the distance walked from the checkpoint, in filtered items or output-pages
+     * @param inputPages the number of input-pages read during the walk
+     */
+    default void onWalk(long distance, long inputPages) {
+    }
+
+    /**
+     * an output-page was filled
+     *
+     * @param inputPages the number of input-pages read to fill it, beginning at its index
+     * @param items      the number of items in the output-page
+     */
+    default void onOutputPage(long inputPages, long items) {
+    }
+}
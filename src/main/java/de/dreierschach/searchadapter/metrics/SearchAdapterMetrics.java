@@ -0,0 +1,126 @@
+package de.dreierschach.searchadapter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a search-adapter, collected as a {@link SearchAdapterListener}: the cost of requests to the underlying repository,
+ * the selectivity of the custom filters and the length of walks over input-pages.
+ */
+public class SearchAdapterMetrics implements SearchAdapterListener {
+    private final Histogram upstreamNanos = new Histogram();
+    private final LongAdder upstreamItems = new LongAdder();
+    private final LongAdder upstreamFailures = new LongAdder();
+    private final LongAdder testedItems = new LongAdder();
+    private final LongAdder matchedItems = new LongAdder();
+    private final Histogram walkDistances = new Histogram();
+    private final Histogram walkInputPages = new Histogram();
+    private final Histogram outputPageInputPages = new Histogram();
+
+    @Override
+    public void onUpstreamCall(long nanos, int items, Throwable failure) {
+        upstreamNanos.record(nanos);
+        upstreamItems.add(items);
+        if (failure != null) {
+            upstreamFailures.increment();
+        }
+    }
+
+    @Override
+    public void onFilter(long testedItems, long matchedItems) {
+        this.testedItems.add(testedItems);
+        this.matchedItems.add(matchedItems);
+    }
+
+    @Override
+    public void onWalk(long distance, long inputPages) {
+        walkDistances.record(distance);
+        walkInputPages.record(inputPages);
+    }
+
+    @Override
+    public void onOutputPage(long inputPages, long items) {
+        outputPageInputPages.record(inputPages);
+    }
+
+    /**
+     * @return the number of requests to the underlying repository
+     */
+    public long upstreamCalls() {
+        return upstreamNanos.count();
+    }
+
+    /**
+     * @return the number of failed requests to the underlying repository
+     */
+    public long upstreamFailures() {
+        return upstreamFailures.sum();
+    }
+
+    /**
+     * @return the number of items read from the underlying repository
+     */
+    public long upstreamItems() {
+        return upstreamItems.sum();
+    }
+
+    /**
+     * @return the durations of requests to the underlying repository in nanoseconds
+     */
+    public Histogram upstreamLatency() {
+        return upstreamNanos;
+    }
+
+    /**
+     * @return the number of items tested by custom filters
+     */
+    public long testedItems() {
+        return testedItems.sum();
+    }
+
+    /**
+     * @return the number of items matching the custom filters
+     */
+    public long matchedItems() {
+        return matchedItems.sum();
+    }
+
+    /**
+     * @return the share of tested items matching the custom filters, or 1 if no item was tested
+     */
+    public double selectivity() {
+        var tested = testedItems();
+        return tested > 0 ? (double) matchedItems() / tested : 1;
+    }
+
+    /**
+     * @return the distances of walks from the nearest checkpoint to the requested position
+     */
+    public Histogram walkDistance() {
+        return walkDistances;
+    }
+
+    /**
+     * @return the numbers of input-pages read by walks
+     */
+    public Histogram walkLength() {
+        return walkInputPages;
+    }
+
+    /**
+     * @return the numbers of input-pages read to fill an output-page, beginning at its index
+     */
+    public Histogram inputPagesPerOutputPage() {
+        return outputPageInputPages;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchAdapterMetrics:\n" +
+                "-- Upstream calls:     " + upstreamCalls() + " (failed: " + upstreamFailures() + ", items: " + upstreamItems() + ")\n" +
+                "-- Upstream latency:   " + upstreamLatency() + "\n" +
+                "-- Selectivity:        " + matchedItems() + "/" + testedItems() + "\n" +
+                "-- Walk distance:      " + walkDistance() + "\n" +
+                "-- Walk length:        " + walkLength() + "\n" +
+                "-- Pages per output:   " + inputPagesPerOutputPage() + "\n";
+    }
+}
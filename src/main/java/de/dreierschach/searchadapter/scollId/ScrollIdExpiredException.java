@@ -0,0 +1,28 @@
+package de.dreierschach.searchadapter.scollId;
+
+import java.io.Serial;
+
+/**
+ * Thrown by {@link SearchWithScrollIdAdapter#find(SearchWithScrollIdAdapter.IterativeSearch)}, if the underlying repository
+ * rejects a scroll-id, because it has expired. The adapter forgets the scroll-id and scrolls to the page again from the nearest
+ * page with a valid scroll-id, or from the first page, if the scroll-ids keep expiring.
+ */
+public class ScrollIdExpiredException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message the detail message
+     */
+    public ScrollIdExpiredException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message the detail message
+     * @param cause   the exception of the underlying repository
+     */
+    public ScrollIdExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,13 +1,39 @@
 package de.dreierschach.searchadapter.scollId;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.dreierschach.searchadapter.cache.CheckpointFile;
+import de.dreierschach.searchadapter.cache.Checkpoints;
+import de.dreierschach.searchadapter.cache.CompressedPageStore;
+import de.dreierschach.searchadapter.cache.ItemCodec;
+import de.dreierschach.searchadapter.cache.SizeEstimator;
+import de.dreierschach.searchadapter.metrics.SearchAdapterListener;
+import de.dreierschach.searchadapter.metrics.SearchAdapterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter.OutputPageAndIndex.first;
-import static java.util.concurrent.TimeUnit.MINUTES;
 
 /**
  * Adapts a repository, that supports iterative instead of paged searching
@@ -19,9 +45,43 @@ import static java.util.concurrent.TimeUnit.MINUTES;
  * @param <S> the scroll-id type
  */
 abstract public class SearchWithScrollIdAdapter<T, U, S> {
+    private static final Logger log = LoggerFactory.getLogger(SearchWithScrollIdAdapter.class);
+
+    // the number of searches, for which the reported number of items is remembered
+    private static final long SEARCH_TRACKING_SIZE = 10_000;
+
+    // the number of times to look up a page again from the nearest valid scroll-id, when scroll-ids expire while scrolling to it,
+    // before the page is looked up from the first page
+    private static final int MAX_RECOVERIES = 3;
+
+    private AsyncCache<IterativeSearch<U, S>, IterativeSearchResult<T, S>> asyncInputCache;
     private Cache<IterativeSearch<U, S>, IterativeSearchResult<T, S>> inputCache;
+    private CompressedPageStore<IterativeSearch<U, S>, IterativeSearchResult<T, S>> compressedInputCache;
+    // the times the input-pages were read from the underlying repository, they expire with it in both tiers of the input cache
+    private final Cache<IterativeSearchResult<T, S>, Long> writeTimes = Caffeine.newBuilder().weakKeys().build();
     private Cache<PagedSearch<U>, S> scrollIdCache;
+    private final Checkpoints<ScrollKey<U>, S> checkpoints = new Checkpoints<>();
+    private CheckpointFile<ScrollKey<U>, S> checkpointFile;
     private boolean cacheEnabled = false;
+    private final SearchAdapterMetrics metrics = new SearchAdapterMetrics();
+    private final List<SearchAdapterListener> listeners = new CopyOnWriteArrayList<>(List.of(metrics));
+    private Duration expireAfterWrite = Duration.ofMinutes(5);
+    private Duration refreshAfterWrite;
+    private Executor refreshExecutor;
+    private Executor readAheadExecutor;
+    private int readAheadPages;
+    private long maxReadAheadItems;
+    private Cache<ScrollKey<U>, ReadAhead> readAheads;
+    // the number of items per request to the underlying repository, 0 to request the page-size of the output-pages
+    private long batchSize = 0;
+    // the numbers of items reported by the underlying repository
+    private final Cache<U, Long> totalSizes = Caffeine.newBuilder()
+            .expireAfterWrite(expireAfterWrite)
+            .maximumSize(SEARCH_TRACKING_SIZE)
+            .build();
+
+    // runs every task on a new virtual thread
+    private static final Executor VIRTUAL_THREADS = task -> Thread.ofVirtual().name("searchadapter-", 0).start(task);
 
     // -------- abstract methods
 
@@ -33,6 +93,39 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
      */
     abstract protected IterativeSearchResult<T, S> find(IterativeSearch<U, S> search);
 
+    // -------- overridable methods
+
+    /**
+     * Delegate a search-request to the underlying repository asynchronously. Override it, if the repository has a non-blocking
+     * client, so that scrolling over many input-pages doesn't block a thread while waiting for it.
+     * <p>
+     * By default {@link #find(IterativeSearch)} is called in the calling thread.
+     *
+     * @param search the search-request
+     * @return the future search-result
+     */
+    protected CompletableFuture<IterativeSearchResult<T, S>> findAsync(IterativeSearch<U, S> search) {
+        try {
+            return CompletableFuture.completedFuture(find(search));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * The time, an upstream scroll-id stays valid after the page it belongs to was read, e.g. the keep-alive of a scroll context.
+     * Override it, if the underlying repository lets scroll-ids expire earlier than the cached scroll-ids, see {@link #setExpiry(Duration)}.
+     * <p>
+     * If the underlying repository rejects an expired scroll-id anyway, {@link #find(IterativeSearch)} should throw a
+     * {@link ScrollIdExpiredException}.
+     *
+     * @param result the search-result containing the scroll-id of the next page
+     * @return the time to keep the scroll-id in the cache, at most the default expiry, or null for the default expiry
+     */
+    protected Duration scrollIdTtl(IterativeSearchResult<T, S> result) {
+        return null;
+    }
+
     // -------- public methods
 
     /**
@@ -42,17 +135,322 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
      * @param scrollIdCacheSize the size of the cache for scroll-ids
      */
     public void enableCache(long inputCacheSize, long scrollIdCacheSize) {
-        inputCache = Caffeine.newBuilder()
-                .expireAfterWrite(5, MINUTES)
-                .maximumSize(inputCacheSize)
-                .build();
-        scrollIdCache = Caffeine.newBuilder()
-                .expireAfterWrite(5, MINUTES)
-                .maximumSize(scrollIdCacheSize)
+        enableCache(Caffeine.newBuilder().maximumSize(inputCacheSize), Caffeine.newBuilder().maximumSize(scrollIdCacheSize));
+    }
+
+    /**
+     * initialize caches for input-pages and scroll-ids, that are bounded by their estimated size in bytes instead of their
+     * number of entries. The items and scroll-ids are weighed by the default {@link SizeEstimator}.
+     *
+     * @param inputCacheBytes    the maximum size of the cache for requests to the underlying repository in bytes
+     * @param scrollIdCacheBytes the maximum size of the cache for scroll-ids in bytes
+     */
+    public void enableWeightedCache(long inputCacheBytes, long scrollIdCacheBytes) {
+        enableWeightedCache(inputCacheBytes, scrollIdCacheBytes, SizeEstimator.defaultEstimator());
+    }
+
+    /**
+     * initialize caches for input-pages and scroll-ids, that are bounded by their estimated size in bytes instead of their
+     * number of entries. An input-page is weighed by its items, a scroll-id by itself and its search-request.
+     *
+     * @param inputCacheBytes    the maximum size of the cache for requests to the underlying repository in bytes
+     * @param scrollIdCacheBytes the maximum size of the cache for scroll-ids in bytes
+     * @param itemSize           the estimator of the retained size of an item
+     */
+    public void enableWeightedCache(long inputCacheBytes, long scrollIdCacheBytes, SizeEstimator<? super T> itemSize) {
+        SizeEstimator<Object> keySize = SizeEstimator.defaultEstimator();
+        enableCache(
+                Caffeine.newBuilder()
+                        .maximumWeight(inputCacheBytes)
+                        .weigher((IterativeSearch<U, S> search, IterativeSearchResult<T, S> result) -> SizeEstimator.weight(
+                                SizeEstimator.ENTRY_OVERHEAD + keySize.estimate(search.search()) + keySize.estimate(search.scrollId()) +
+                                        keySize.estimate(result.scrollId()) + itemSize.estimateAll(result.items()))),
+                Caffeine.newBuilder()
+                        .maximumWeight(scrollIdCacheBytes)
+                        // a scroll-id is also kept as a checkpoint, so it is weighed twice
+                        .weigher((PagedSearch<U> search, S scrollId) -> SizeEstimator.weight(2 * SizeEstimator.ENTRY_OVERHEAD +
+                                keySize.estimate(search.search()) + keySize.estimate(scrollId))));
+    }
+
+    private void enableCache(Caffeine<? super IterativeSearch<U, S>, ? super IterativeSearchResult<T, S>> inputCacheBuilder,
+                             Caffeine<? super PagedSearch<U>, ? super S> scrollIdCacheBuilder) {
+        var defaultExpiry = expireAfterWrite.toNanos();
+        var inputCacheWithListener = inputCacheBuilder
+                .recordStats()
+                // evictions happen on the calling thread, so that the cached input-pages don't depend on the timing of another
+                // thread, reloads run on the refresh executor, see asyncReload
+                .executor(Runnable::run)
+                // evicted input-pages are moved into the compressed cache, if enabled
+                .<IterativeSearch<U, S>, IterativeSearchResult<T, S>>removalListener((key, result, cause) -> {
+                    var compressed = compressedInputCache;
+                    if (compressed != null && key != null && cause == RemovalCause.SIZE) {
+                        compressed.put(key, result, writeTime(result));
+                    }
+                })
+                // an input-page expires with the time it was read, also when it is moved back from the compressed cache
+                .expireAfter(new Expiry<IterativeSearch<U, S>, IterativeSearchResult<T, S>>() {
+                    @Override
+                    public long expireAfterCreate(IterativeSearch<U, S> search, IterativeSearchResult<T, S> result, long currentTime) {
+                        return Math.max(0, defaultExpiry - (currentTime - writeTime(result)));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(IterativeSearch<U, S> search, IterativeSearchResult<T, S> result, long currentTime,
+                                                  long currentDuration) {
+                        return Math.max(0, defaultExpiry - (currentTime - writeTime(result)));
+                    }
+
+                    @Override
+                    public long expireAfterRead(IterativeSearch<U, S> search, IterativeSearchResult<T, S> result, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                });
+        if (refreshAfterWrite != null) {
+            inputCacheWithListener.refreshAfterWrite(refreshAfterWrite);
+        }
+        asyncInputCache = inputCacheWithListener.buildAsync(new CacheLoader<>() {
+            @Override
+            public IterativeSearchResult<T, S> load(IterativeSearch<U, S> iterativeSearch) {
+                return upstreamFind(iterativeSearch);
+            }
+
+            @Override
+            public IterativeSearchResult<T, S> reload(IterativeSearch<U, S> iterativeSearch, IterativeSearchResult<T, S> oldResult) {
+                try {
+                    return upstreamFind(iterativeSearch);
+                } catch (ScrollIdExpiredException e) {
+                    // the cached input-page is kept until it expires
+                    log.debug("scroll-id of {} has expired, the input-page is not refreshed", iterativeSearch);
+                    return oldResult;
+                }
+            }
+
+            @Override
+            public CompletableFuture<IterativeSearchResult<T, S>> asyncReload(IterativeSearch<U, S> iterativeSearch,
+                                                                             IterativeSearchResult<T, S> oldResult, Executor executor) {
+                return CompletableFuture.supplyAsync(() -> reload(iterativeSearch, oldResult), refreshExecutor);
+            }
+        });
+        inputCache = asyncInputCache.synchronous();
+        // the checkpoints follow the removals from the scroll-id cache
+        checkpoints.clear();
+        scrollIdCache = scrollIdCacheBuilder
+                .<PagedSearch<U>, S>removalListener((key, scrollId, cause) -> {
+                    if (key != null && cause != RemovalCause.REPLACED) {
+                        checkpoints.remove(ScrollKey.of(key), key.page(), scrollId);
+                    }
+                })
+                // scroll-ids with a ttl of their own are put with it, see cacheScrollId(search, scrollId, result)
+                .expireAfter(new Expiry<PagedSearch<U>, S>() {
+                    @Override
+                    public long expireAfterCreate(PagedSearch<U> search, S scrollId, long currentTime) {
+                        return defaultExpiry;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(PagedSearch<U> search, S scrollId, long currentTime, long currentDuration) {
+                        return defaultExpiry;
+                    }
+
+                    @Override
+                    public long expireAfterRead(PagedSearch<U> search, S scrollId, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .executor(Runnable::run)
                 .build();
         cacheEnabled = true;
     }
 
+    /**
+     * set the time, after which cached input-pages, scroll-ids and the statistics of searches expire - by default 5 minutes. It
+     * should not exceed the time, a scroll-id stays valid in the underlying repository.
+     * <p>
+     * Call it before enabling the caches.
+     *
+     * @param expireAfterWrite the time to keep a cached entry after it was written
+     */
+    public void setExpiry(Duration expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        totalSizes.policy().expireAfterWrite().ifPresent(expiry -> expiry.setExpiresAfter(expireAfterWrite));
+    }
+
+    /**
+     * set the number of items to request from the underlying repository per scroll, if it should differ from the page-size of
+     * the output-pages - e.g. because the repository only supports fixed batches, or few large batches are cheaper than many
+     * small ones. The output-pages are sliced from the cached batches, so that one request to the underlying repository serves
+     * all output-pages within a batch: the position of an output-page is the scroll-id of its batch and its offset within it.
+     * <p>
+     * By default, the page-size of the output-pages is requested.
+     *
+     * @param batchSize the number of items per request to the underlying repository, or 0 to request the page-size
+     */
+    public void setBatchSize(long batchSize) {
+        this.batchSize = Math.max(0, batchSize);
+    }
+
+    /**
+     * enable refreshing input-pages ahead of their expiry: an input-page requested after the refresh-time is reloaded
+     * asynchronously with its scroll-id, while the cached input-page is still returned (stale-while-revalidate). If reloading
+     * fails, e.g. because the scroll-id is no longer valid, the cached input-page is kept until it expires.
+     * <p>
+     * Call it before enabling the caches.
+     *
+     * @param refreshAfterWrite the time after writing an input-page, after which it is reloaded on the next request
+     * @param executor          the executor to reload input-pages on
+     */
+    public void enableRefreshAhead(Duration refreshAfterWrite, Executor executor) {
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.refreshExecutor = executor;
+    }
+
+    /**
+     * enable a second tier for input-pages evicted from the input cache: the input-pages are serialized, compressed and kept
+     * outside the Java heap, so that many more input-pages can be kept. An input-page found there is moved back into the
+     * input cache. It expires in both tiers with the time it was read from the underlying repository.
+     * <p>
+     * The compressed cache only takes effect when caching is enabled.
+     *
+     * @param maximumBytes  the maximum compressed size of all input-pages in bytes
+     * @param itemCodec     the codec to serialize the items with
+     * @param scrollIdCodec the codec to serialize the scroll-ids with
+     */
+    public void enableCompressedCache(long maximumBytes, ItemCodec<T> itemCodec, ItemCodec<S> scrollIdCodec) {
+        var nullableScrollIdCodec = ItemCodec.nullable(scrollIdCodec);
+        compressedInputCache = new CompressedPageStore<>(maximumBytes, expireAfterWrite, new ItemCodec<>() {
+            @Override
+            public void encode(IterativeSearchResult<T, S> result, DataOutput out) throws IOException {
+                nullableScrollIdCodec.encode(result.scrollId(), out);
+                out.writeLong(result.pageSize());
+                out.writeLong(result.totalSize());
+                out.writeInt(result.items().size());
+                for (var item : result.items()) {
+                    itemCodec.encode(item, out);
+                }
+            }
+
+            @Override
+            public IterativeSearchResult<T, S> decode(DataInput in) throws IOException {
+                var scrollId = nullableScrollIdCodec.decode(in);
+                var pageSize = in.readLong();
+                var totalSize = in.readLong();
+                var size = in.readInt();
+                var items = new ArrayList<T>(size);
+                for (int i = 0; i < size; i++) {
+                    items.add(itemCodec.decode(in));
+                }
+                return new IterativeSearchResult<>(items, scrollId, pageSize, totalSize);
+            }
+        });
+    }
+
+    /**
+     * enable persisting scroll-ids in a memory-mapped file, so that they can be reused after a restart. The scroll-ids found in
+     * the file are loaded into the scroll-id cache, unless they were saved with another version. Call {@link #saveCheckpoints()}
+     * to write the scroll-ids, e.g. when shutting down.
+     * <p>
+     * Only persist scroll-ids, that stay valid across a restart. The scroll-ids are only loaded when caching is enabled.
+     *
+     * @param file          the file
+     * @param version       the version of the scroll-ids - change it, when the data of the underlying repository changes
+     * @param searchCodec   the codec to serialize search-requests with
+     * @param scrollIdCodec the codec to serialize scroll-ids with
+     * @return the number of loaded scroll-ids
+     */
+    public int enableCheckpointFile(Path file, long version, ItemCodec<U> searchCodec, ItemCodec<S> scrollIdCodec) {
+        var nullableSearchCodec = ItemCodec.nullable(searchCodec);
+        checkpointFile = new CheckpointFile<>(file, version, new ItemCodec<>() {
+            @Override
+            public void encode(ScrollKey<U> key, DataOutput out) throws IOException {
+                nullableSearchCodec.encode(key.search(), out);
+                out.writeLong(key.pageSize());
+            }
+
+            @Override
+            public ScrollKey<U> decode(DataInput in) throws IOException {
+                return new ScrollKey<>(nullableSearchCodec.decode(in), in.readLong());
+            }
+        }, ItemCodec.nullable(scrollIdCodec));
+        if (!cacheEnabled) {
+            return 0;
+        }
+        return checkpointFile.load((key, page, scrollId) -> {
+            scrollIdCache.put(new PagedSearch<>(key.search(), page, key.pageSize()), scrollId);
+            checkpoints.put(key, page, scrollId);
+        });
+    }
+
+    /**
+     * write the cached scroll-ids into the checkpoint file, see {@link #enableCheckpointFile(Path, long, ItemCodec, ItemCodec)}
+     *
+     * @return the number of written scroll-ids
+     */
+    public int saveCheckpoints() {
+        return checkpointFile != null ? checkpointFile.save(checkpoints) : 0;
+    }
+
+    /**
+     * add a listener, e.g. to export metrics
+     *
+     * @param listener the listener
+     */
+    public void addListener(SearchAdapterListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the metrics of this adapter since its creation
+     */
+    public SearchAdapterMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the statistics of the enabled caches by name: "input" and "scrollId"
+     */
+    public Map<String, CacheStats> cacheStats() {
+        var stats = new LinkedHashMap<String, CacheStats>();
+        if (cacheEnabled) {
+            stats.put("input", inputCache.stats());
+            stats.put("scrollId", scrollIdCache.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * enable reading ahead: after a page of a search is read, the following pages are scrolled asynchronously into the caches,
+     * so that fetching them overlaps with the client processing the pages before. Scrolling goes on, as long as the client
+     * requests further pages, and stops at the given distance behind the last requested page.
+     * <p>
+     * Reading ahead only takes effect when caching is enabled.
+     *
+     * @param executor          the executor to read ahead on
+     * @param readAheadPages    the maximum number of pages to read ahead of the last requested page
+     * @param maxReadAheadItems the maximum number of items to read ahead of the last requested page, to bound the memory
+     */
+    public void enableReadAhead(Executor executor, int readAheadPages, long maxReadAheadItems) {
+        this.readAheads = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(SEARCH_TRACKING_SIZE)
+                .build();
+        this.readAheadPages = readAheadPages;
+        this.maxReadAheadItems = maxReadAheadItems;
+        this.readAheadExecutor = executor;
+    }
+
+    /**
+     * find items asynchronously by a given search-request, page and page-size. The scroll-ids and input-pages are read on a
+     * virtual thread, so that many concurrent requests don't exhaust a thread pool while waiting for the underlying repository.
+     *
+     * @param pagedSearch the search-request
+     * @return the future result-page
+     */
+    public CompletableFuture<PagedSearchResult<T>> findAndFilterAsync(PagedSearch<U> pagedSearch) {
+        return CompletableFuture.supplyAsync(() -> findAndFilter(pagedSearch), VIRTUAL_THREADS);
+    }
+
     /**
      * find items by a given search-request, page, page-size and a custom filter
      *
@@ -60,17 +458,91 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
      * @return a result-page
      */
     public PagedSearchResult<T> findAndFilter(PagedSearch<U> pagedSearch) {
-        // find position to start reading data for the output-page
-        var optionalIndex = cachedFindScrollId(pagedSearch);
-        if (optionalIndex.notPresent()) {
-            return new PagedSearchResult<>(List.of(), pagedSearch.page(), pagedSearch.pageSize());
+        // slice the output-page from the batches of the underlying repository
+        if (batchSize > 0) {
+            var slice = findSlice(pagedSearch.search(), pagedSearch.page() * pagedSearch.pageSize(), pagedSearch.pageSize());
+            if (slice.items().isEmpty()) {
+                return new PagedSearchResult<>(List.of(), pagedSearch.page(), pagedSearch.pageSize());
+            }
+            listeners.forEach(listener -> listener.onOutputPage(1, slice.items().size()));
+            return new PagedSearchResult<>(slice.items(), pagedSearch.page(), pagedSearch.pageSize(), slice.totalSize());
         }
 
-        // read input page
-        var searchResult = cachedFind(new IterativeSearch<>(pagedSearch.search(), optionalIndex.scrollId(), pagedSearch.pageSize()));
+        // find position to start reading data for the output-page and read the input page
+        var searchResult = findPage(pagedSearch);
+        if (searchResult == null) {
+            return new PagedSearchResult<>(List.of(), pagedSearch.page(), pagedSearch.pageSize());
+        }
+        listeners.forEach(listener -> listener.onOutputPage(1, searchResult.items().size()));
+        readAhead(pagedSearch, searchResult);
 
         // return read items, limited to the page-size
-        return new PagedSearchResult<>(searchResult.items(), pagedSearch.page(), pagedSearch.pageSize());
+        return new PagedSearchResult<>(searchResult.items(), pagedSearch.page(), pagedSearch.pageSize(), searchResult.totalSize());
+    }
+
+    /**
+     * find consecutive result-pages by a given search-request, first page and page-size. The scroll-id of the first page is
+     * looked up once, the following pages are read by scrolling on from there, caching their scroll-ids on the way.
+     *
+     * @param pagedSearch the search-request for the first page
+     * @param pageCount   the number of pages
+     * @return the result-pages, the pages behind the end of the result are empty
+     */
+    public List<PagedSearchResult<T>> findAndFilterPages(PagedSearch<U> pagedSearch, int pageCount) {
+        if (pageCount <= 0) {
+            return List.of();
+        }
+        var pages = new ArrayList<PagedSearchResult<T>>(pageCount);
+        // slice the output-pages from the batches of the underlying repository, that are read once for all of them
+        if (batchSize > 0) {
+            var pageSize = pagedSearch.pageSize();
+            var slice = findSlice(pagedSearch.search(), pagedSearch.page() * pageSize, pageCount * pageSize);
+            for (int i = 0; i < pageCount; i++) {
+                var page = pagedSearch.page() + i;
+                var from = (int) Math.min(slice.items().size(), i * pageSize);
+                var items = slice.items().subList(from, (int) Math.min(slice.items().size(), from + pageSize));
+                if (items.isEmpty()) {
+                    pages.add(new PagedSearchResult<>(List.of(), page, pageSize));
+                    continue;
+                }
+                listeners.forEach(listener -> listener.onOutputPage(1, items.size()));
+                pages.add(new PagedSearchResult<>(List.copyOf(items), page, pageSize, slice.totalSize()));
+            }
+            return pages;
+        }
+        S scrollId = null;
+        var more = true;
+        for (int i = 0; i < pageCount; i++) {
+            var page = pagedSearch.page() + i;
+            if (!more) {
+                pages.add(new PagedSearchResult<>(List.of(), page, pagedSearch.pageSize()));
+                continue;
+            }
+            // read input page, its scroll-id leads to the next one - after an expired scroll-id the page is looked up again
+            var pageSearch = new PagedSearch<>(pagedSearch.search(), page, pagedSearch.pageSize());
+            var searchResult = i > 0 ? readPage(pageSearch, scrollId, false) : null;
+            if (searchResult == null) {
+                searchResult = findPage(pageSearch);
+            }
+            if (searchResult == null) {
+                more = false;
+                pages.add(new PagedSearchResult<>(List.of(), page, pagedSearch.pageSize()));
+                continue;
+            }
+            var pageResult = searchResult;
+            listeners.forEach(listener -> listener.onOutputPage(1, pageResult.items().size()));
+            pages.add(new PagedSearchResult<>(searchResult.items(), page, pagedSearch.pageSize(), searchResult.totalSize()));
+
+            more = hasNextPage(searchResult, page);
+            scrollId = searchResult.scrollId();
+            if (more) {
+                cacheScrollId(new PagedSearch<>(pagedSearch.search(), page + 1, pagedSearch.pageSize()), scrollId, searchResult);
+            }
+            if (i == pageCount - 1) {
+                readAhead(new PagedSearch<>(pagedSearch.search(), page, pagedSearch.pageSize()), searchResult);
+            }
+        }
+        return pages;
     }
 
     // -------- public types
@@ -89,18 +561,27 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
 
     /**
      * The result of a search delegated to a search-method of the underlying repository
+     * <p>
+     * The underlying repository may report the number of all items of the search, so that the adapter knows the last page
+     * without scrolling to the empty one behind it.
      *
-     * @param items    a list of items
-     * @param scrollId the scrollId of the next page
-     * @param pageSize the page-size
-     * @param <T>      the items type
-     * @param <S>      the scroll-id type
+     * @param items     a list of items
+     * @param scrollId  the scrollId of the next page
+     * @param pageSize  the page-size
+     * @param totalSize the number of all items of the search, or {@link PagedSearchResult#UNKNOWN_TOTAL_SIZE}
+     * @param <T>       the items type
+     * @param <S>       the scroll-id type
      */
-    public record IterativeSearchResult<T, S>(List<T> items, S scrollId, long pageSize) {
+    public record IterativeSearchResult<T, S>(List<T> items, S scrollId, long pageSize, long totalSize) {
+        public IterativeSearchResult(List<T> items, S scrollId, long pageSize) {
+            this(items, scrollId, pageSize, PagedSearchResult.UNKNOWN_TOTAL_SIZE);
+        }
+
         public String toString() {
             return "IterativeSearchResult:" +
                     "-- ScrollId:  " + scrollId() + "\n" +
                     "-- PageSize:  " + pageSize() + "\n" +
+                    (totalSize() != PagedSearchResult.UNKNOWN_TOTAL_SIZE ? "-- TotalSize: " + totalSize() + "\n" : "") +
                     items().stream().map(Object::toString).map(s -> "-- " + s + "\n").collect(Collectors.joining());
         }
     }
@@ -119,28 +600,229 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
     /**
      * The result of a paged search
      *
-     * @param items    a list of items
-     * @param page     the page-number
-     * @param pageSize the page-size
-     * @param <T>      the items type
+     * @param items     a list of items
+     * @param page      the page-number
+     * @param pageSize  the page-size
+     * @param totalSize the number of all items of the search, if reported by the underlying repository, or {@link #UNKNOWN_TOTAL_SIZE}
+     * @param <T>       the items type
      */
-    public record PagedSearchResult<T>(List<T> items, long page, long pageSize) {
+    public record PagedSearchResult<T>(List<T> items, long page, long pageSize, long totalSize) {
+        public static final long UNKNOWN_TOTAL_SIZE = -1;
+
+        public PagedSearchResult(List<T> items, long page, long pageSize) {
+            this(items, page, pageSize, UNKNOWN_TOTAL_SIZE);
+        }
+
         public String toString() {
             return "PagedSearchResult:" +
                     "-- Page:      " + page() + "\n" +
                     "-- PageSize:  " + pageSize() + "\n" +
+                    (totalSize() != UNKNOWN_TOTAL_SIZE ? "-- TotalSize: " + totalSize() + "\n" : "") +
                     items().stream().map(Object::toString).map(s -> "-- " + s + "\n").collect(Collectors.joining());
         }
     }
 
+    // -------- private types
+
+    // the key of a search without its page-number
+    record ScrollKey<U>(U search, long pageSize) {
+        static <U> ScrollKey<U> of(PagedSearch<U> search) {
+            return new ScrollKey<>(search.search(), search.pageSize());
+        }
+    }
+
+    // the items of consecutive output-pages sliced from the batches of the underlying repository
+    private record BatchSlice<T>(List<T> items, long totalSize) {
+    }
+
+    // the reading ahead of a scroll: the pages up to the target are read by one task at a time
+    static class ReadAhead {
+        private long target;
+        private boolean running;
+    }
+
     // -------- private methods
 
+    // read a range of items from the batches of the underlying repository: the batches are looked up like pages of the batch
+    // size, so that their scroll-ids are cached and recovered like those of output-pages
+    private BatchSlice<T> findSlice(U search, long offset, long limit) {
+        var items = new ArrayList<T>();
+        var totalSize = PagedSearchResult.UNKNOWN_TOTAL_SIZE;
+        var batch = offset / batchSize;
+        // the last read batch
+        IterativeSearchResult<T, S> result = null;
+        var resultBatch = batch;
+        while (items.size() < limit) {
+            // the batch behind a read one is scrolled to directly - after an expired scroll-id the batch is looked up again
+            var batchSearch = new PagedSearch<>(search, batch, batchSize);
+            var batchResult = result != null ? readPage(batchSearch, result.scrollId(), false) : null;
+            if (batchResult == null) {
+                batchResult = findPage(batchSearch);
+            }
+            if (batchResult == null) {
+                break;
+            }
+            result = batchResult;
+            resultBatch = batch;
+            totalSize = result.totalSize();
+
+            // the offset of the next item within the batch
+            var from = (int) Math.min(result.items().size(), Math.max(0, offset + items.size() - batch * batchSize));
+            var to = (int) Math.min(result.items().size(), from + limit - items.size());
+            items.addAll(result.items().subList(from, to));
+            if (!hasNextPage(result, batch)) {
+                break;
+            }
+            cacheScrollId(new PagedSearch<>(search, batch + 1, batchSize), result.scrollId(), result);
+            batch++;
+        }
+        if (result != null) {
+            readAhead(new PagedSearch<>(search, resultBatch, batchSize), result);
+        }
+        return new BatchSlice<>(items, totalSize);
+    }
+
+    // read the pages following a requested page asynchronously into the caches, or let a running read ahead go on further
+    private void readAhead(PagedSearch<U> search, IterativeSearchResult<T, S> result) {
+        if (!cacheEnabled || readAheadExecutor == null || !hasNextPage(result, search.page())) {
+            return;
+        }
+        var pages = Math.min(readAheadPages, maxReadAheadItems / Math.max(1, search.pageSize()));
+        if (pages <= 0) {
+            return;
+        }
+        var key = ScrollKey.of(search);
+        var readAhead = readAheads.get(key, k -> new ReadAhead());
+        synchronized (readAhead) {
+            readAhead.target = Math.max(readAhead.target, search.page() + pages);
+            if (readAhead.running) {
+                return;
+            }
+            readAhead.running = true;
+        }
+        var nextPage = search.page() + 1;
+        var nextScrollId = result.scrollId();
+        cacheScrollId(new PagedSearch<>(search.search(), nextPage, search.pageSize()), nextScrollId, result);
+        try {
+            readAheadExecutor.execute(() -> scrollAhead(key, readAhead, nextPage, nextScrollId));
+        } catch (RejectedExecutionException e) {
+            synchronized (readAhead) {
+                readAhead.running = false;
+            }
+        }
+    }
+
+    // scroll from a page on up to the target of a read ahead, the target may grow meanwhile
+    private void scrollAhead(ScrollKey<U> key, ReadAhead readAhead, long page, S scrollId) {
+        try {
+            while (true) {
+                synchronized (readAhead) {
+                    if (page > readAhead.target) {
+                        readAhead.running = false;
+                        return;
+                    }
+                }
+                // an expired scroll-id ends reading ahead, the next request looks the page up again
+                var result = readPage(new PagedSearch<>(key.search(), page, key.pageSize()), scrollId, false);
+                if (result == null || !hasNextPage(result, page)) {
+                    synchronized (readAhead) {
+                        readAhead.running = false;
+                    }
+                    return;
+                }
+                page++;
+                scrollId = result.scrollId();
+                cacheScrollId(new PagedSearch<>(key.search(), page, key.pageSize()), scrollId, result);
+            }
+        } catch (RuntimeException e) {
+            log.warn("reading ahead {} failed at page {}", key, page, e);
+            synchronized (readAhead) {
+                readAhead.running = false;
+            }
+        }
+    }
+
     // use cache for input pages
     private IterativeSearchResult<T, S> cachedFind(IterativeSearch<U, S> iterativeSearch) {
         if (cacheEnabled) {
-            return inputCache.get(iterativeSearch, this::find);
+            return cachedLoad(iterativeSearch);
+        }
+        return upstreamFind(iterativeSearch);
+    }
+
+    // read an input-page into the input cache: concurrent requests of the same input-page wait for one read, that runs outside
+    // of the cache's locks, so that a blocking read doesn't pin the carrier thread of a virtual thread
+    private IterativeSearchResult<T, S> cachedLoad(IterativeSearch<U, S> iterativeSearch) {
+        var loading = new CompletableFuture<IterativeSearchResult<T, S>>();
+        var result = asyncInputCache.get(iterativeSearch, (key, executor) -> loading);
+        if (result == loading) {
+            try {
+                loading.complete(findCompressed(iterativeSearch));
+            } catch (ScrollIdExpiredException e) {
+                // an expired scroll-id is expected, it is not passed to the cache as a failed load, the cache removes the
+                // input-page without a result and the concurrent requests find it expired, too
+                loading.complete(null);
+                throw e;
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+            }
+        }
+        var page = join(result);
+        if (page == null) {
+            throw new ScrollIdExpiredException("the scroll-id of " + iterativeSearch + " has expired");
+        }
+        return page;
+    }
+
+    // wait for a future and rethrow its failure unwrapped
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // read an input-page from the compressed cache, or from the underlying repository if it is not there
+    private IterativeSearchResult<T, S> findCompressed(IterativeSearch<U, S> iterativeSearch) {
+        var stored = compressedInputCache != null ? compressedInputCache.take(iterativeSearch) : null;
+        if (stored == null) {
+            return upstreamFind(iterativeSearch);
+        }
+        // the input-page keeps the time it was read
+        writeTimes.put(stored.page(), stored.writeTime());
+        return stored.page();
+    }
+
+    // the time an input-page was read from the underlying repository
+    private long writeTime(IterativeSearchResult<T, S> result) {
+        var writeTime = writeTimes.getIfPresent(result);
+        return writeTime != null ? writeTime : System.nanoTime();
+    }
+
+    // delegate a search-request to the underlying repository and report it to the listeners
+    private IterativeSearchResult<T, S> upstreamFind(IterativeSearch<U, S> iterativeSearch) {
+        var start = System.nanoTime();
+        try {
+            var result = join(findAsync(iterativeSearch));
+            var nanos = System.nanoTime() - start;
+            writeTimes.put(result, start);
+            if (result.totalSize() != PagedSearchResult.UNKNOWN_TOTAL_SIZE) {
+                totalSizes.put(iterativeSearch.search(), result.totalSize());
+            }
+            listeners.forEach(listener -> listener.onUpstreamCall(nanos, result.items().size(), null));
+            return result;
+        } catch (RuntimeException e) {
+            var nanos = System.nanoTime() - start;
+            listeners.forEach(listener -> listener.onUpstreamCall(nanos, 0, e));
+            throw e;
         }
-        return find(iterativeSearch);
     }
 
     private record OptionalScrollId<S>(S scrollId, Boolean present) {
@@ -159,8 +841,13 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
 
     // use cache for scroll-ids
     private OptionalScrollId<S> cachedFindScrollId(PagedSearch<U> search) {
+        // there is no page behind the reported number of items
+        var totalSize = totalSizes.getIfPresent(search.search());
+        if (totalSize != null && search.page() > 0 && search.page() * search.pageSize() >= totalSize) {
+            return OptionalScrollId.empty();
+        }
         if (!cacheEnabled) {
-            return findIndex(search, new OutputPageAndIndex<>(0L, null));
+            return findIndex(search, new OutputPageAndIndex<>(0L, null), false);
         }
         // When iterating the input-pages, all found scroll-ids will be cached.
         // To do this, the cache-method get(search, Function<search, scrollId>) cannot be used,
@@ -170,7 +857,7 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
             return OptionalScrollId.of(result);
         }
         // beginn the iteration at the last cached scroll-id prior to the requested
-        return findIndex(search, findLastCachedIndex(search));
+        return findIndex(search, findLastCachedIndex(search), false);
     }
 
     // A record for internal use that holds the last cached output-page and scroll-id previous to the requested output-page.
@@ -180,41 +867,65 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
         }
     }
 
-    // find the last scrollId in cache beginning from the requested output-page -1 down to 0
+    // find the last scrollId in cache prior to the requested output-page
     OutputPageAndIndex<S> findLastCachedIndex(PagedSearch<U> search) {
-        // the scrollId for ouput-page 0 is always (0, 0)
+        // the scrollId for ouput-page 0 is always null
         if (search.page() == 0) {
             return first();
         }
         // find last cached scrollId
-        var i = search.page();
-        PagedSearch<U> key;
-        do {
-            i--;
-            key = new PagedSearch<>(search.search(), i, search.pageSize());
-        } while (i > 0 && !scrollIdCache.asMap().containsKey(key));
-        // nothing found? start by 0 / (0, 0)
-        if (i == 0) {
-            return first();
+        var key = ScrollKey.of(search);
+        var checkpoint = checkpoints.lower(key, search.page());
+        while (checkpoint != null) {
+            // the checkpoints may not yet know about a removal from the scroll-id cache
+            var scrollId = scrollIdCache.getIfPresent(new PagedSearch<>(search.search(), checkpoint.getKey(), search.pageSize()));
+            if (scrollId != null) {
+                // start searching there
+                return new OutputPageAndIndex<>(checkpoint.getKey(), scrollId);
+            }
+            checkpoints.remove(key, checkpoint.getKey(), checkpoint.getValue());
+            checkpoint = checkpoints.lower(key, checkpoint.getKey());
         }
-        // start searching there
-        return new OutputPageAndIndex<>(i, scrollIdCache.getIfPresent(key));
+        // nothing found? start by 0 / null
+        return first();
     }
 
     // find the scrollId (input-page, input-item-scrollId) for a requested output-page, beginning at a known output-page
-    // and scrollId
-    private OptionalScrollId<S> findIndex(PagedSearch<U> search, OutputPageAndIndex<S> start) {
+    // and scrollId - the first page is read from the underlying repository again, if fresh is set
+    private OptionalScrollId<S> findIndex(PagedSearch<U> search, OutputPageAndIndex<S> start, boolean fresh) {
+        var result = walk(search, start, fresh);
+        // every walked output-page is one input-page, the walk may end earlier at the end of the input
+        var distance = search.page() - start.page();
+        listeners.forEach(listener -> listener.onWalk(distance, distance));
+        return result;
+    }
+
+    // iterate the input-pages, see findIndex(search, start, fresh)
+    private OptionalScrollId<S> walk(PagedSearch<U> search, OutputPageAndIndex<S> start, boolean fresh) {
         // counts up to the requested page
         long outputPage = start.page();
         // the scroll-id of the current input-page
         var scrollId = start.scrollId();
+        var recoveries = 0;
 
         while (outputPage < search.page()) {
             // read next data from cache or repository
-            var result = cachedFind(new IterativeSearch<>(search.search(), scrollId, search.pageSize()));
+            var page = new PagedSearch<>(search.search(), outputPage, search.pageSize());
+            var result = readPage(page, scrollId, fresh);
+
+            // the scroll-id has expired? Then go on from the nearest page before with a valid scroll-id, that is read again
+            // to get a valid scroll-id for the next page
+            if (result == null) {
+                var restart = recoveryStart(page, recoveries++);
+                outputPage = restart.page();
+                scrollId = restart.scrollId();
+                fresh = true;
+                continue;
+            }
+            fresh = false;
 
             // no more items found? Then there is no date for the requested page
-            if (result.items().isEmpty() || result.scrollId() == null) {
+            if (!hasNextPage(result, outputPage)) {
                 return OptionalScrollId.empty();
             }
 
@@ -222,12 +933,99 @@ abstract public class SearchWithScrollIdAdapter<T, U, S> {
             scrollId = result.scrollId();
 
             // add all found scroll-ids to cache
-            if (cacheEnabled) {
-                scrollIdCache.put(new PagedSearch<>(search.search(), outputPage, search.pageSize()), scrollId);
-            }
+            cacheScrollId(new PagedSearch<>(search.search(), outputPage, search.pageSize()), scrollId, result);
         }
 
         // the requested output-page is reached, return the current calculated input-scrollId
         return OptionalScrollId.of(scrollId);
     }
+
+    // true, if there is a page behind an output-page: it is neither empty nor the last one by the reported number of items
+    private boolean hasNextPage(IterativeSearchResult<T, S> result, long outputPage) {
+        if (result.items().isEmpty() || result.scrollId() == null) {
+            return false;
+        }
+        return result.totalSize() == PagedSearchResult.UNKNOWN_TOTAL_SIZE || (outputPage + 1) * result.pageSize() < result.totalSize();
+    }
+
+    // cache the scroll-id of an output-page with the ttl given for the search-result it was read from
+    private void cacheScrollId(PagedSearch<U> search, S scrollId, IterativeSearchResult<T, S> result) {
+        if (cacheEnabled) {
+            var ttl = scrollIdTtl(result);
+            if (ttl != null && ttl.compareTo(expireAfterWrite) < 0) {
+                scrollIdCache.policy().expireVariably().orElseThrow().put(search, scrollId, ttl);
+            } else {
+                scrollIdCache.put(search, scrollId);
+            }
+            checkpoints.put(ScrollKey.of(search), search.page(), scrollId);
+        }
+    }
+
+    // read the page of a search, after an expired scroll-id the page is looked up again from the nearest valid scroll-id,
+    // null if there is no such page
+    private IterativeSearchResult<T, S> findPage(PagedSearch<U> search) {
+        var optionalIndex = cachedFindScrollId(search);
+        for (int recoveries = 0; optionalIndex.present(); recoveries++) {
+            var result = readPage(search, optionalIndex.scrollId(), false);
+            if (result != null) {
+                return result;
+            }
+            optionalIndex = findIndex(search, recoveryStart(search, recoveries), true);
+        }
+        return null;
+    }
+
+    // read a page by its scroll-id, or forget the scroll-id and return null, if it has expired in the underlying repository:
+    // the repository rejects it or returns an empty page in front of the reported number of items
+    private IterativeSearchResult<T, S> readPage(PagedSearch<U> page, S scrollId, boolean fresh) {
+        var iterativeSearch = new IterativeSearch<>(page.search(), scrollId, page.pageSize());
+        if (fresh && cacheEnabled) {
+            inputCache.invalidate(iterativeSearch);
+        }
+        try {
+            var result = cachedFind(iterativeSearch);
+            if (scrollId != null && result.items().isEmpty() && page.page() * page.pageSize() < result.totalSize()) {
+                if (cacheEnabled) {
+                    inputCache.invalidate(iterativeSearch);
+                }
+                expireScrollId(page);
+                return null;
+            }
+            return result;
+        } catch (ScrollIdExpiredException e) {
+            // the first page has no scroll-id, that might expire
+            if (scrollId == null) {
+                throw e;
+            }
+            expireScrollId(page);
+            return null;
+        }
+    }
+
+    // forget an expired scroll-id, the checkpoints follow
+    private void expireScrollId(PagedSearch<U> page) {
+        log.debug("scroll-id of {} has expired", page);
+        if (cacheEnabled) {
+            scrollIdCache.invalidate(page);
+        }
+    }
+
+    // the start to look up a page again after an expired scroll-id: the nearest page with a cached scroll-id. If the scroll-ids
+    // keep expiring, e.g. because the whole scroll context has expired, all scroll-ids of the search are forgotten and the page
+    // is looked up from the first page. Give up, if they still keep expiring.
+    private OutputPageAndIndex<S> recoveryStart(PagedSearch<U> page, int recoveries) {
+        if (recoveries < MAX_RECOVERIES) {
+            return findLastCachedIndex(page);
+        }
+        if (recoveries > MAX_RECOVERIES) {
+            throw new ScrollIdExpiredException("scroll-ids keep expiring while scrolling to " + page);
+        }
+        log.debug("scroll-ids of {} keep expiring, scrolling from the first page", page);
+        if (cacheEnabled) {
+            // the checkpoints follow
+            var key = ScrollKey.of(page);
+            scrollIdCache.asMap().keySet().removeIf(search -> ScrollKey.of(search).equals(key));
+        }
+        return first();
+    }
 }
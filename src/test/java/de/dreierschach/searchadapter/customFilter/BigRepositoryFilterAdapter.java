@@ -3,6 +3,7 @@ package de.dreierschach.searchadapter.customFilter;
 import org.apache.commons.lang3.StringUtils;
 
 import java.time.LocalDate;
+import java.util.function.Predicate;
 
 public class BigRepositoryFilterAdapter extends SearchWithFilterAdapter<BigRepository.Item, BigRepository.Search, BigRepositoryFilterAdapter.CustomFilter> {
     private final BigRepository bigRepository;
@@ -14,7 +15,7 @@ public class BigRepositoryFilterAdapter extends SearchWithFilterAdapter<BigRepos
     @Override
     protected PagedSearchResult<BigRepository.Item> find(PagedSearch<BigRepository.Search> search) {
         var result = bigRepository.search(search.search(), search.page(), search.pageSize());
-        return new PagedSearchResult<>(result.items(), search.page(), search.pageSize());
+        return new PagedSearchResult<>(result.items(), search.page(), search.pageSize(), result.totalSize());
     }
 
     @Override
@@ -23,6 +24,14 @@ public class BigRepositoryFilterAdapter extends SearchWithFilterAdapter<BigRepos
                 (customFilter.bornBefore() == null || customFilter.bornBefore().isBefore(item.dateOfBirth().plusDays(1)));
     }
 
+    @Override
+    protected Predicate<BigRepository.Item> compile(CustomFilter customFilter) {
+        var name = customFilter.name();
+        var bornBefore = customFilter.bornBefore();
+        return item -> (StringUtils.isEmpty(name) || item.name().contains(name)) &&
+                (bornBefore == null || !item.dateOfBirth().isBefore(bornBefore));
+    }
+
     // -------- types
 
     public record CustomFilter(String name, LocalDate bornBefore) {
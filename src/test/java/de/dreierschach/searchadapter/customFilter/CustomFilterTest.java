@@ -1,15 +1,40 @@
 package de.dreierschach.searchadapter.customFilter;
 
+import de.dreierschach.searchadapter.cache.ItemCodec;
+import de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.CountEstimate;
+import de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.PagedSearch;
+import de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.PagedSearchResult;
 import de.dreierschach.searchadapter.customFilter.SearchWithFilterAdapter.PagedSearchWithFilter;
 import de.dreierschach.searchadapter.customFilter.GeneralStoreFilterAdapter.CustomFilter;
 import de.dreierschach.searchadapter.customFilter.GeneralStoreRepository.Item;
 import de.dreierschach.searchadapter.customFilter.GeneralStoreRepository.Search;
+import de.dreierschach.searchadapter.metrics.SearchAdapterListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +65,55 @@ class CustomFilterTest {
             new Item("Table", false)
     );
 
+    private static final ItemCodec<Item> ITEM_CODEC = new ItemCodec<>() {
+        @Override
+        public void encode(Item item, DataOutput out) throws IOException {
+            out.writeUTF(item.name());
+            out.writeBoolean(item.eatable());
+        }
+
+        @Override
+        public Item decode(DataInput in) throws IOException {
+            return new Item(in.readUTF(), in.readBoolean());
+        }
+    };
+    private static final ItemCodec<String> STRING_CODEC = ItemCodec.nullable(new ItemCodec<>() {
+        @Override
+        public void encode(String string, DataOutput out) throws IOException {
+            out.writeUTF(string);
+        }
+
+        @Override
+        public String decode(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    });
+    private static final ItemCodec<Search> SEARCH_CODEC = new ItemCodec<>() {
+        @Override
+        public void encode(Search search, DataOutput out) throws IOException {
+            STRING_CODEC.encode(search.name(), out);
+            out.writeInt(search.sort().ordinal());
+        }
+
+        @Override
+        public Search decode(DataInput in) throws IOException {
+            return new Search(STRING_CODEC.decode(in), Search.SortBy.values()[in.readInt()]);
+        }
+    };
+    private static final ItemCodec<CustomFilter> FILTER_CODEC = new ItemCodec<>() {
+        @Override
+        public void encode(CustomFilter customFilter, DataOutput out) throws IOException {
+            STRING_CODEC.encode(customFilter.eatable() != null ? customFilter.eatable().toString() : null, out);
+            STRING_CODEC.encode(customFilter.namePrefix(), out);
+        }
+
+        @Override
+        public CustomFilter decode(DataInput in) throws IOException {
+            var eatable = STRING_CODEC.decode(in);
+            return new CustomFilter(eatable != null ? Boolean.valueOf(eatable) : null, STRING_CODEC.decode(in));
+        }
+    };
+
     private SearchWithFilterAdapter<Item, Search, CustomFilter> adapter;
     private GeneralStoreRepository repository;
 
@@ -88,6 +162,128 @@ class CustomFilterTest {
         assertThat(result.items()).containsExactly(ZUCCHINI);
     }
 
+    @Test
+    void testMatchCache() {
+        var tests = new AtomicInteger();
+        var countingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public boolean test(Item item, CustomFilter customFilter) {
+                tests.incrementAndGet();
+                return super.test(item, customFilter);
+            }
+        };
+        countingAdapter.enableCache(10, 10);
+        countingAdapter.enableMatchCache(10);
+
+        countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var testCount = tests.get();
+        var result = countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+
+        // the input-pages 1 and 2 are already filtered
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(tests.get() - testCount).isEqualTo(0);
+    }
+
+    @Test
+    void testMatchCacheChangedInput() {
+        var items = new ArrayList<>(TEST_ITEMS);
+        var changingAdapter = new GeneralStoreFilterAdapter(new GeneralStoreRepository(items));
+        // the input-pages are read again for every request, the matches are cached
+        changingAdapter.enableMatchCache(10);
+        var result = changingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 0, 4));
+        assertThat(result.items()).extracting(Item::name).containsExactly("Bumerang", "Hammer", "Table");
+
+        // the cached matches don't fit the changed input-pages
+        items.add(new Item("Anchor", false));
+        result = changingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 0, 4));
+        assertThat(result.items()).extracting(Item::name).containsExactly("Anchor", "Bumerang", "Hammer", "Table");
+    }
+
+    @Test
+    void testRefinedFilter() {
+        var tests = new AtomicInteger();
+        var countingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public boolean test(Item item, CustomFilter customFilter) {
+                tests.incrementAndGet();
+                return super.test(item, customFilter);
+            }
+        };
+        countingAdapter.enableCache(10, 10);
+        countingAdapter.enableMatchCache(10);
+
+        countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 0, 4));
+        var testCount = tests.get();
+        var result = countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false, "H"), 0, 4));
+
+        // only the 3 items, that are not eatable, are tested again
+        assertThat(result.items()).containsExactly(new Item("Hammer", false));
+        assertThat(tests.get() - testCount).isEqualTo(3);
+    }
+
+    @Test
+    void testParallelFilter() {
+        adapter.enableParallelFilter(ForkJoinPool.commonPool(), 1);
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+    }
+
+    @Test
+    void testParallelSeek() {
+        var seeks = new AtomicInteger();
+        adapter.enableParallelSeek(task -> {
+            seeks.incrementAndGet();
+            ForkJoinPool.commonPool().execute(task);
+        }, 4);
+        adapter.enableCache(10, 10);
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 3, 2));
+        var requestCount = repository.getRequestCount();
+
+        assertThat(result.items()).containsExactly(SALAMI, SOJA);
+        assertThat(seeks.get()).isPositive();
+
+        // the seek cached the indexes of the pages in front of the requested one
+        result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 2));
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCount() {
+        adapter.enableCache(2, 5);
+        var count = adapter.count(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4);
+        var requestCount = repository.getRequestCount();
+        var estimate = adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 2);
+
+        assertThat(count).isEqualTo(9);
+        // the count is cached
+        assertThat(estimate).isEqualTo(new CountEstimate(9, 9, 9, true));
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testEstimateCount() {
+        var estimate = adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 3);
+        log.info("==> estimate: {}, requests:  {}", estimate, repository.getRequestCount());
+
+        assertThat(estimate.exact()).isFalse();
+        assertThat(estimate.lower()).isLessThanOrEqualTo(9);
+        assertThat(estimate.upper()).isGreaterThanOrEqualTo(9).isLessThanOrEqualTo(12);
+    }
+
+    @Test
+    void testEstimateCountRepeated() {
+        adapter.enableCache(10, 10);
+        var estimate = adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 2);
+        for (int i = 0; i < 50; i++) {
+            adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 2);
+        }
+
+        // sampling the same input-pages again doesn't narrow the bounds
+        assertThat(adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 2)).isEqualTo(estimate);
+    }
+
     @Test
     void testNoCache() {
         // adapter.enableCache(2, 5);
@@ -96,7 +292,8 @@ class CustomFilterTest {
         adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
         adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
         log.info("==> requests without cache:  {}", repository.getRequestCount());
-        assertThat(repository.getRequestCount()).isEqualTo(16);
+        // the reported total size ends the walks without requesting an empty input-page
+        assertThat(repository.getRequestCount()).isEqualTo(11);
     }
 
     @Test
@@ -110,4 +307,549 @@ class CustomFilterTest {
         log.info("==> requests with cache:  {}", repository.getRequestCount());
         assertThat(repository.getRequestCount()).isLessThanOrEqualTo(8);
     }
+
+    @Test
+    void testWeightedCache() {
+        adapter.enableWeightedCache(64 * 1024, 16 * 1024);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+
+        // the input-pages and indexes fit into the budget
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCompressedCache() {
+        adapter.enableCache(1, 10);
+        adapter.enableCompressedCache(1024 * 1024, ITEM_CODEC);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+
+        // the input-pages evicted from the input cache are read from the compressed cache
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCompressedCacheExpiry() throws InterruptedException {
+        adapter.setExpiry(Duration.ofMillis(600));
+        adapter.enableCache(1, 10);
+        adapter.enableCompressedCache(1024 * 1024, ITEM_CODEC);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        Thread.sleep(300);
+        var requestCount = repository.getRequestCount();
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+        Thread.sleep(400);
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+
+        // the input-pages moved between the tiers expire with the time they were read
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isGreaterThan(requestCount);
+    }
+
+    @Test
+    void testCheckpointFile(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("checkpoints");
+        adapter.enableCache(2, 10);
+        assertThat(adapter.enableCheckpointFile(file, 1, SEARCH_CODEC, FILTER_CODEC)).isZero();
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        assertThat(adapter.saveCheckpoints()).isPositive();
+
+        // a restarted adapter walks from the loaded indexes
+        var restartedAdapter = new GeneralStoreFilterAdapter(repository);
+        restartedAdapter.enableCache(2, 10);
+        assertThat(restartedAdapter.enableCheckpointFile(file, 1, SEARCH_CODEC, FILTER_CODEC)).isPositive();
+        var requestCount = repository.getRequestCount();
+        var result = restartedAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        var warmRequests = repository.getRequestCount() - requestCount;
+
+        // indexes of another version are discarded
+        var updatedAdapter = new GeneralStoreFilterAdapter(repository);
+        updatedAdapter.enableCache(2, 10);
+        assertThat(updatedAdapter.enableCheckpointFile(file, 2, SEARCH_CODEC, FILTER_CODEC)).isZero();
+        requestCount = repository.getRequestCount();
+        updatedAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        assertThat(repository.getRequestCount() - requestCount).isGreaterThan(warmRequests);
+
+        // a damaged count of indexes is discarded without reading the file
+        var bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(16, Integer.MAX_VALUE);
+        Files.write(file, bytes);
+        var damagedAdapter = new GeneralStoreFilterAdapter(repository);
+        damagedAdapter.enableCache(2, 10);
+        assertThat(damagedAdapter.enableCheckpointFile(file, 1, SEARCH_CODEC, FILTER_CODEC)).isZero();
+    }
+
+    @Test
+    void testRefreshAhead() throws InterruptedException {
+        var failing = new AtomicBoolean();
+        var refreshingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public PagedSearchResult<Item> find(PagedSearch<Search> search) {
+                if (failing.get()) {
+                    throw new IllegalStateException("repository not available");
+                }
+                return super.find(search);
+            }
+        };
+        refreshingAdapter.setExpiry(Duration.ofMinutes(1));
+        refreshingAdapter.enableRefreshAhead(Duration.ofMillis(1), Runnable::run);
+        refreshingAdapter.enableCache(10, 10);
+
+        refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
+        var requestCount = repository.getRequestCount();
+        Thread.sleep(10);
+
+        // the input-pages are reloaded, while the cached ones are returned
+        var result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
+        assertThat(result.items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        assertThat(repository.getRequestCount()).isGreaterThan(requestCount);
+
+        // when reloading fails, the cached input-pages are still returned
+        failing.set(true);
+        Thread.sleep(10);
+        result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
+        assertThat(result.items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+    }
+
+    @Test
+    void testRefreshAheadChangedInput() throws InterruptedException {
+        var items = new ArrayList<>(TEST_ITEMS);
+        var refreshingAdapter = new GeneralStoreFilterAdapter(new GeneralStoreRepository(items));
+        refreshingAdapter.setExpiry(Duration.ofMinutes(1));
+        refreshingAdapter.enableRefreshAhead(Duration.ofMillis(1), Runnable::run);
+        refreshingAdapter.enableCache(10, 10);
+        var result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+
+        // the indexes are outdated by the changed input-pages, while they are kept as long as they are used
+        items.add(new Item("Avocado", true));
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(10);
+            result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        }
+        assertThat(result.items()).containsExactly(CHEESE, KIWIS, PEANUTS, SALAMI);
+    }
+
+    @Test
+    void testRefreshAheadEvictedInput() throws InterruptedException {
+        var items = new ArrayList<Item>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new Item("Item %03d".formatted(i), i % 2 == 0));
+        }
+        var refreshingAdapter = new GeneralStoreFilterAdapter(new GeneralStoreRepository(items));
+        refreshingAdapter.setExpiry(Duration.ofMillis(300));
+        refreshingAdapter.enableRefreshAhead(Duration.ofMillis(20), Runnable::run);
+        refreshingAdapter.enableCache(1, 100);
+        var result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 5, 4));
+        assertThat(result.items()).extracting(Item::name).containsExactly("Item 040", "Item 042", "Item 044", "Item 046");
+
+        // the input-pages are evicted and read again instead of reloaded, the indexes used meanwhile expire nevertheless
+        items.add(new Item("Anchor", true));
+        items.add(new Item("Apples", true));
+        for (int i = 0; i < 20; i++) {
+            Thread.sleep(50);
+            result = refreshingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 5, 4));
+        }
+        assertThat(result.items()).extracting(Item::name).containsExactly("Item 036", "Item 038", "Item 040", "Item 042");
+    }
+
+    @Test
+    void testMetrics() {
+        var walks = new AtomicInteger();
+        adapter.addListener(new SearchAdapterListener() {
+            @Override
+            public void onWalk(long distance, long inputPages) {
+                walks.incrementAndGet();
+            }
+        });
+        adapter.enableCache(10, 10);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        var metrics = adapter.metrics();
+        log.info(metrics.toString());
+
+        assertThat(metrics.upstreamCalls()).isEqualTo(repository.getRequestCount());
+        assertThat(metrics.upstreamLatency().count()).isEqualTo(repository.getRequestCount());
+        assertThat(metrics.selectivity()).isBetween(0.5, 1.0);
+        assertThat(metrics.inputPagesPerOutputPage().count()).isEqualTo(2);
+        // the second request finds the cached index without walking
+        assertThat(walks.get()).isEqualTo(1);
+        assertThat(adapter.cacheStats().get("index").hitCount()).isPositive();
+    }
+
+    @Test
+    void testMatchCounts() {
+        var walkedInputPages = new AtomicLong();
+        adapter.addListener(new SearchAdapterListener() {
+            @Override
+            public void onWalk(long distance, long inputPages) {
+                walkedInputPages.set(inputPages);
+            }
+        });
+        // no index is kept, only the counts of matching items per input-page
+        adapter.enableCache(10, 0);
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 3, 2));
+        assertThat(result.items()).containsExactly(SALAMI, SOJA);
+        assertThat(walkedInputPages.get()).isEqualTo(5);
+
+        // the counts tell the input-pages containing the pages, so there is nothing to walk
+        result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 2));
+        assertThat(result.items()).containsExactly(BREAD, CHEESE);
+        assertThat(walkedInputPages.get()).isEqualTo(0);
+        result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 3, 2));
+        assertThat(result.items()).containsExactly(SALAMI, SOJA);
+        assertThat(walkedInputPages.get()).isEqualTo(0);
+    }
+
+    @Test
+    void testOutputCache() {
+        var tests = new AtomicInteger();
+        var countingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public boolean test(Item item, CustomFilter customFilter) {
+                tests.incrementAndGet();
+                return super.test(item, customFilter);
+            }
+        };
+        countingAdapter.enableCache(10, 10);
+        countingAdapter.enableOutputCache(10);
+
+        countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var requestCount = repository.getRequestCount();
+        var testCount = tests.get();
+        var result = countingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+
+        // the cached output-page is returned without reading or testing items
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+        assertThat(tests.get()).isEqualTo(testCount);
+        assertThat(countingAdapter.cacheStats().get("output").hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testWeightedOutputCache() {
+        adapter.enableWeightedCache(64 * 1024, 16 * 1024);
+        adapter.enableWeightedOutputCache(16 * 1024);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+
+        // the output-page fits into the budget
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+        assertThat(adapter.cacheStats().get("output").hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testTotalSize() {
+        // a repository, that doesn't report the total size
+        var unknownSizeAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public PagedSearchResult<Item> find(PagedSearch<Search> search) {
+                var result = super.find(search);
+                return new PagedSearchResult<>(result.items(), result.page(), result.pageSize());
+            }
+        };
+        unknownSizeAdapter.enableCache(10, 10);
+        assertThat(unknownSizeAdapter.count(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4)).isEqualTo(9);
+        var unknownSizeRequests = repository.getRequestCount();
+
+        // the reported total size tells the last input-page, so the empty one behind it is not requested
+        adapter.enableCache(10, 10);
+        var requestCount = repository.getRequestCount();
+        assertThat(adapter.count(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4)).isEqualTo(9);
+        assertThat(repository.getRequestCount() - requestCount).isEqualTo(unknownSizeRequests - 1);
+
+        // and the number of input-items is known without bisecting
+        var estimate = adapter.estimateCount(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 4, 3);
+        assertThat(estimate.count()).isEqualTo(3);
+        assertThat(repository.getRequestCount() - requestCount).isEqualTo(unknownSizeRequests - 1);
+    }
+
+    @Test
+    void testPageRange() {
+        adapter.enableCache(10, 10);
+        var pages = adapter.findAndFilterPages(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4), 4);
+        var requestCount = repository.getRequestCount();
+        log.info("==> requests of a range of pages:  {}", requestCount);
+
+        assertThat(pages).extracting(PagedSearchResult::page).containsExactly(0L, 1L, 2L, 3L);
+        assertThat(pages.get(0).items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        assertThat(pages.get(1).items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(pages.get(2).items()).containsExactly(ZUCCHINI);
+        assertThat(pages.get(3).items()).isEmpty();
+        assertThat(requestCount).isEqualTo(3);
+
+        // the walk cached the indexes of all pages
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCachedIndex() {
+        adapter.enableCache(2, 5);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+
+        // the walk starts at the cached index of page 1
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount() - requestCount).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void testOffset() {
+        adapter.enableCache(2, 5);
+        var result = adapter.findAndFilter(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 3, 3);
+        log.info("==> requests:  {}", repository.getRequestCount());
+
+        assertThat(result).containsExactly(CHEESE, KIWIS, PEANUTS);
+    }
+
+    @Test
+    void testOffsetPageSize() {
+        adapter.enableCache(2, 5);
+        var items = new ArrayList<Item>();
+        for (int offset = 0; offset < 9; offset++) {
+            items.addAll(adapter.findAndFilter(new Search(null, Search.SortBy.NAME), new CustomFilter(true), offset, 1));
+        }
+
+        // the input-pages don't depend on the limit, so single items are read from one input-page
+        assertThat(items).containsExactly(APPLES, BANANAS, BREAD, CHEESE, KIWIS, PEANUTS, SALAMI, SOJA, ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testIndexSharedByPageSizes() {
+        adapter.enableCache(2, 5);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, 2));
+        log.info("==> requests:  {}", repository.getRequestCount() - requestCount);
+
+        // the index of the offset 8 is known from the page-size 4
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount() - requestCount).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void testReadAhead() {
+        adapter.enableCache(10, 10);
+        adapter.enableReadAhead(Runnable::run, 2);
+
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
+        adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        log.info("==> requests with read-ahead:  {}", repository.getRequestCount());
+
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testAdaptiveFetchSize() {
+        adapter.enableCache(10, 10);
+        adapter.enableAdaptiveFetchSize(2, 4);
+
+        var page0 = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 0, 4));
+        var page1 = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 1, 4));
+        var page2 = adapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+        log.info("==> requests with adaptive fetch-size:  {}", repository.getRequestCount());
+
+        assertThat(page0.items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        assertThat(page1.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(page2.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void testAdaptiveFetchSizeConcurrentRequests() throws InterruptedException, ExecutionException {
+        // a repository, that holds back the requests of bigger pages, once they are blocked
+        var blocking = new AtomicBoolean();
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var blockingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public PagedSearchResult<Item> find(PagedSearch<Search> search) {
+                if (blocking.get() && search.pageSize() > 2) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.find(search);
+            }
+        };
+        blockingAdapter.enableCache(20, 10);
+        blockingAdapter.enableAdaptiveFetchSize(2, 4);
+        // the input-pages 0 to 3 are read and the share of matching items is known
+        blockingAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 0, 1));
+        var requestCount = repository.getRequestCount();
+        blocking.set(true);
+
+        try (var executor = Executors.newFixedThreadPool(2)) {
+            // the selective filter requests the input-pages 4 and 5 at once
+            var selective = executor.submit(() -> blockingAdapter.findAndFilter(
+                    new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false), 2, 1)));
+            entered.await();
+            // another filter reads the input-pages one by one and waits for the bigger page
+            var other = executor.submit(() -> blockingAdapter.findAndFilter(
+                    new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(false, "T"), 0, 1)));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThat(selective.get().items()).containsExactly(new Item("Table", false));
+            assertThat(other.get().items()).containsExactly(new Item("Table", false));
+        }
+        assertThat(repository.getRequestCount() - requestCount).isEqualTo(1);
+    }
+
+    @Test
+    void testConcurrentRequests() throws InterruptedException, ExecutionException {
+        // a slow repository, so that the requests overlap
+        var slowAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public PagedSearchResult<Item> find(PagedSearch<Search> search) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.find(search);
+            }
+        };
+        slowAdapter.enableCache(10, 10);
+
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<PagedSearchResult<Item>>>();
+        try (var executor = Executors.newFixedThreadPool(20)) {
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return slowAdapter.findAndFilter(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 2, 4));
+                }));
+            }
+            start.countDown();
+            for (var result : results) {
+                assertThat(result.get().items()).containsExactly(ZUCCHINI);
+            }
+        }
+        log.info("==> requests of concurrent searches:  {}", repository.getRequestCount());
+
+        // one walk reads the input-pages 0 to 3
+        assertThat(repository.getRequestCount()).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    void testAsyncRequests() {
+        // a non-blocking repository client, that completes its requests on another thread after a delay
+        var asyncAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            protected CompletableFuture<PagedSearchResult<Item>> findAsync(PagedSearch<Search> search) {
+                return CompletableFuture.supplyAsync(() -> find(search), CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS));
+            }
+        };
+        asyncAdapter.enableCache(10, 10);
+
+        var results = new ArrayList<CompletableFuture<PagedSearchResult<Item>>>();
+        for (int i = 0; i < 200; i++) {
+            results.add(asyncAdapter.findAndFilterAsync(new PagedSearchWithFilter<>(new Search(null, Search.SortBy.NAME), new CustomFilter(true), i % 3, 4)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).join().page()).isEqualTo(i % 3);
+        }
+        assertThat(results.get(2).join().items()).containsExactly(ZUCCHINI);
+        log.info("==> requests of async searches:  {}", repository.getRequestCount());
+
+        // the requests share the input-pages 0 to 3
+        assertThat(repository.getRequestCount()).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    void testStream() {
+        var result = adapter.stream(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4).toList();
+        log.info("==> requests:  {}", repository.getRequestCount());
+
+        assertThat(result).containsExactly(APPLES, BANANAS, BREAD, CHEESE, KIWIS, PEANUTS, SALAMI, SOJA, ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testIteratorTestsOnce() {
+        var tests = new AtomicInteger();
+        var countingAdapter = new GeneralStoreFilterAdapter(repository) {
+            @Override
+            public boolean test(Item item, CustomFilter customFilter) {
+                tests.incrementAndGet();
+                return super.test(item, customFilter);
+            }
+        };
+        var iterator = countingAdapter.iterator(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4);
+        var items = new ArrayList<Item>();
+        while (iterator.hasNext() && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+
+        // each input-item is tested once, however often hasNext is called
+        assertThat(items).containsExactly(APPLES, BANANAS, BREAD, CHEESE, KIWIS, PEANUTS, SALAMI, SOJA, ZUCCHINI);
+        assertThat(tests.get()).isEqualTo(TEST_ITEMS.size());
+    }
+
+    @Test
+    void testPublisher() throws InterruptedException, ExecutionException {
+        var publisher = adapter.publisher(new Search(null, Search.SortBy.NAME), new CustomFilter(true), 4, Runnable::run);
+        var items = new ArrayList<Item>();
+        var completed = new CompletableFuture<List<Item>>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Item item) {
+                items.add(item);
+                // stop after the first page
+                if (items.size() < 4) {
+                    subscription.request(1);
+                } else {
+                    completed.complete(items);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(items);
+            }
+        });
+
+        assertThat(completed.get()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        // only the input-pages needed for the requested items are read
+        assertThat(repository.getRequestCount()).isEqualTo(2);
+    }
 }
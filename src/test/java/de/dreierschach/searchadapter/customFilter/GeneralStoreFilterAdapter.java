@@ -15,16 +15,26 @@ public class GeneralStoreFilterAdapter
     @Override
     public PagedSearchResult<Item> find(PagedSearch<Search> search) {
         var result = repository.search(search.search(), search.page(), search.pageSize());
-        return new PagedSearchResult<>(result.items(), result.page(), result.pageSize());
+        return new PagedSearchResult<>(result.items(), result.page(), result.pageSize(), result.totalSize());
     }
 
     @Override
     public boolean test(Item item, CustomFilter customFilter) {
-        return customFilter.eatable() == null || item.eatable() == customFilter.eatable();
+        return (customFilter.eatable() == null || item.eatable() == customFilter.eatable()) &&
+                (customFilter.namePrefix() == null || item.name().startsWith(customFilter.namePrefix()));
+    }
+
+    @Override
+    protected boolean implies(CustomFilter customFilter, CustomFilter other) {
+        return (other.eatable() == null || other.eatable().equals(customFilter.eatable())) &&
+                (other.namePrefix() == null || customFilter.namePrefix() != null && customFilter.namePrefix().startsWith(other.namePrefix()));
     }
 
     // -------- types
 
-    public record CustomFilter(Boolean eatable) {
+    public record CustomFilter(Boolean eatable, String namePrefix) {
+        public CustomFilter(Boolean eatable) {
+            this(eatable, null);
+        }
     }
 }
@@ -17,11 +17,12 @@ public class GeneralStoreRepository {
 
     public SearchResult search(Search search, long page, long pageSize) {
         requestCount++;
-        var result = items.stream()
+        var found = items.stream()
                 .filter(item -> StringUtils.isEmpty(search.name()) || item.name().contains(search.name()))
                 .sorted(search.sort().comparator)
-                .skip(page * pageSize).limit(pageSize).toList();
-        return new SearchResult(result, items.size(), page, pageSize);
+                .toList();
+        var result = found.stream().skip(page * pageSize).limit(pageSize).toList();
+        return new SearchResult(result, found.size(), page, pageSize);
     }
 
     // count requests for statistics
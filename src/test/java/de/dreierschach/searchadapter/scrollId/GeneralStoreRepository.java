@@ -18,11 +18,12 @@ public class GeneralStoreRepository {
     public SearchResult search(Search search, ScrollId scrollId, long pageSize) {
         requestCount++;
         var page = scrollId != null ? scrollId.id() / pageSize : 0;
-        var result = items.stream()
+        var found = items.stream()
                 .filter(item -> StringUtils.isEmpty(search.name()) || item.name().contains(search.name()))
                 .sorted(search.sort().comparator)
-                .skip(page * pageSize).limit(pageSize).toList();
-        return new SearchResult(result, items.size(), new ScrollId(search.name() + search.sort(), (page + 1) * pageSize), pageSize);
+                .toList();
+        var result = found.stream().skip(page * pageSize).limit(pageSize).toList();
+        return new SearchResult(result, found.size(), new ScrollId(search.name() + search.sort(), (page + 1) * pageSize), pageSize);
     }
 
     // count requests for statistics
@@ -18,6 +18,6 @@ public class GeneralStoreScrollIdAdapter
     protected IterativeSearchResult<Item, ScrollId> find(IterativeSearch<Search, ScrollId> search) {
         var result = repository.search(search.search(),
                 search.scrollId(), search.pageSize());
-        return new IterativeSearchResult<>(result.items(), result.scrollId(), result.pageSize());
+        return new IterativeSearchResult<>(result.items(), result.scrollId(), result.pageSize(), result.totalSize());
     }
 }
@@ -1,16 +1,31 @@
 package de.dreierschach.searchadapter.scrollId;
 
+import de.dreierschach.searchadapter.cache.ItemCodec;
+import de.dreierschach.searchadapter.metrics.SearchAdapterListener;
+import de.dreierschach.searchadapter.scollId.ScrollIdExpiredException;
 import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter;
+import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter.IterativeSearch;
+import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter.IterativeSearchResult;
 import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter.PagedSearch;
+import de.dreierschach.searchadapter.scollId.SearchWithScrollIdAdapter.PagedSearchResult;
 import de.dreierschach.searchadapter.scrollId.GeneralStoreRepository.Item;
 import de.dreierschach.searchadapter.scrollId.GeneralStoreRepository.ScrollId;
 import de.dreierschach.searchadapter.scrollId.GeneralStoreRepository.Search;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -105,4 +120,338 @@ class ScrollIdTest {
         log.info("==> requests without cache:  {}", repository.getRequestCount());
         assertThat(repository.getRequestCount()).isLessThanOrEqualTo(5);
     }
+
+    @Test
+    void testWeightedCache() {
+        adapter.enableWeightedCache(64 * 1024, 16 * 1024);
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+
+        // the input-pages and scroll-ids fit into the budget
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCompressedCache() {
+        adapter.enableCache(1, 5);
+        adapter.enableCompressedCache(1024 * 1024, new ItemCodec<>() {
+            @Override
+            public void encode(Item item, DataOutput out) throws IOException {
+                out.writeUTF(item.name());
+                out.writeBoolean(item.eatable());
+            }
+
+            @Override
+            public Item decode(DataInput in) throws IOException {
+                return new Item(in.readUTF(), in.readBoolean());
+            }
+        }, new ItemCodec<>() {
+            @Override
+            public void encode(ScrollId scrollId, DataOutput out) throws IOException {
+                out.writeUTF(scrollId.key());
+                out.writeLong(scrollId.id());
+            }
+
+            @Override
+            public ScrollId decode(DataInput in) throws IOException {
+                return new ScrollId(in.readUTF(), in.readLong());
+            }
+        });
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        var requestCount = repository.getRequestCount();
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 4));
+
+        // the input-pages evicted from the input cache are read from the compressed cache
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testCheckpointFile(@TempDir Path directory) {
+        var file = directory.resolve("checkpoints");
+        ItemCodec<Search> searchCodec = new ItemCodec<>() {
+            @Override
+            public void encode(Search search, DataOutput out) throws IOException {
+                out.writeUTF(String.valueOf(search.name()));
+                out.writeInt(search.sort().ordinal());
+            }
+
+            @Override
+            public Search decode(DataInput in) throws IOException {
+                var name = in.readUTF();
+                return new Search(name.equals("null") ? null : name, Search.SortBy.values()[in.readInt()]);
+            }
+        };
+        ItemCodec<ScrollId> scrollIdCodec = new ItemCodec<>() {
+            @Override
+            public void encode(ScrollId scrollId, DataOutput out) throws IOException {
+                out.writeUTF(scrollId.key());
+                out.writeLong(scrollId.id());
+            }
+
+            @Override
+            public ScrollId decode(DataInput in) throws IOException {
+                return new ScrollId(in.readUTF(), in.readLong());
+            }
+        };
+        adapter.enableCache(2, 5);
+        adapter.enableCheckpointFile(file, 1, searchCodec, scrollIdCodec);
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(adapter.saveCheckpoints()).isPositive();
+
+        // a restarted adapter scrolls from the loaded scroll-ids
+        var restartedAdapter = new GeneralStoreScrollIdAdapter(repository);
+        restartedAdapter.enableCache(2, 5);
+        assertThat(restartedAdapter.enableCheckpointFile(file, 1, searchCodec, scrollIdCodec)).isPositive();
+        var requestCount = repository.getRequestCount();
+        var result = restartedAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount() - requestCount).isEqualTo(1);
+
+        // scroll-ids of another version are discarded
+        var updatedAdapter = new GeneralStoreScrollIdAdapter(repository);
+        updatedAdapter.enableCache(2, 5);
+        assertThat(updatedAdapter.enableCheckpointFile(file, 2, searchCodec, scrollIdCodec)).isZero();
+    }
+
+    @Test
+    void testRefreshAhead() throws InterruptedException {
+        adapter.setExpiry(Duration.ofMinutes(1));
+        adapter.enableRefreshAhead(Duration.ofMillis(1), Runnable::run);
+        adapter.enableCache(2, 5);
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 4));
+        var requestCount = repository.getRequestCount();
+        Thread.sleep(10);
+
+        // the input-page is reloaded, while the cached one is returned
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 4));
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(repository.getRequestCount()).isGreaterThan(requestCount);
+    }
+
+    @Test
+    void testReadAhead() {
+        adapter.enableCache(10, 10);
+        adapter.enableReadAhead(Runnable::run, 2, 100);
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 0, 4));
+        assertThat(result.items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        // the following two pages are read ahead
+        var requestCount = repository.getRequestCount();
+        assertThat(requestCount).isEqualTo(3);
+
+        result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 4));
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testReadAheadMemoryBound() {
+        adapter.enableCache(10, 10);
+        adapter.enableReadAhead(Runnable::run, 5, 4);
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 0, 4));
+
+        // only one page of 4 items is read ahead
+        assertThat(repository.getRequestCount()).isEqualTo(2);
+    }
+
+    // an adapter, whose scroll-ids expire all at once, when the generation of the scroll contexts is incremented
+    private static class ExpiringScrollIdAdapter extends GeneralStoreScrollIdAdapter {
+        private final AtomicInteger generation = new AtomicInteger();
+        private final boolean rejectExpired;
+
+        ExpiringScrollIdAdapter(GeneralStoreRepository repository, boolean rejectExpired) {
+            super(repository);
+            this.rejectExpired = rejectExpired;
+        }
+
+        @Override
+        protected IterativeSearchResult<Item, ScrollId> find(IterativeSearch<Search, ScrollId> search) {
+            var context = "#" + generation.get();
+            if (search.scrollId() != null && !search.scrollId().key().endsWith(context)) {
+                if (rejectExpired) {
+                    throw new ScrollIdExpiredException("expired: " + search.scrollId());
+                }
+                return new IterativeSearchResult<>(List.of(), null, search.pageSize(), TEST_ITEMS.size());
+            }
+            var result = super.find(search);
+            var scrollId = new ScrollId(result.scrollId().key().split("#")[0] + context, result.scrollId().id());
+            return new IterativeSearchResult<>(result.items(), scrollId, result.pageSize(), result.totalSize());
+        }
+    }
+
+    @Test
+    void testExpiredScrollId() {
+        var expiringAdapter = new ExpiringScrollIdAdapter(repository, true);
+        expiringAdapter.enableCache(10, 10);
+        var result = expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 2));
+        assertThat(result.items()).containsExactly(KIWIS, PEANUTS);
+        expiringAdapter.generation.incrementAndGet();
+
+        // the cached scroll-ids lead to expired ones, so the page is looked up again from the first page
+        result = expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 3, 2));
+        assertThat(result.items()).containsExactly(SALAMI, SOJA);
+        result = expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 4, 2));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+    }
+
+    @Test
+    void testExpiredScrollIdEmptyPage() {
+        var expiringAdapter = new ExpiringScrollIdAdapter(repository, false);
+        expiringAdapter.enableCache(10, 10);
+        expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 2));
+        expiringAdapter.generation.incrementAndGet();
+
+        // an empty page in front of the reported total size is read with an expired scroll-id
+        var result = expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 3, 2));
+        assertThat(result.items()).containsExactly(SALAMI, SOJA);
+    }
+
+    @Test
+    void testExpiredScrollContext() {
+        var expiringAdapter = new ExpiringScrollIdAdapter(repository, true);
+        expiringAdapter.enableCache(20, 20);
+        expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 7, 1));
+        expiringAdapter.generation.incrementAndGet();
+
+        // all cached scroll-ids have expired, more of them than are probed, so the page is looked up from the first page
+        var result = expiringAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 8, 1));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+    }
+
+    @Test
+    void testScrollIdTtl() throws InterruptedException {
+        var walks = new AtomicInteger();
+        var shortLivedAdapter = new GeneralStoreScrollIdAdapter(repository) {
+            @Override
+            protected Duration scrollIdTtl(IterativeSearchResult<Item, ScrollId> result) {
+                return Duration.ofMillis(1);
+            }
+        };
+        shortLivedAdapter.addListener(new SearchAdapterListener() {
+            @Override
+            public void onWalk(long distance, long inputPages) {
+                walks.incrementAndGet();
+            }
+        });
+        shortLivedAdapter.enableCache(10, 10);
+        shortLivedAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        Thread.sleep(10);
+
+        // the scroll-id of the page has expired, so the page is scrolled to again
+        var result = shortLivedAdapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(walks.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testBatchSize() {
+        adapter.setBatchSize(4);
+        adapter.enableCache(10, 10);
+        var pages = new ArrayList<List<Item>>();
+        for (int page = 0; page < 6; page++) {
+            pages.add(adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), page, 2)).items());
+        }
+
+        // the output-pages are sliced from 3 batches of 4 items
+        assertThat(pages).containsExactly(List.of(APPLES, BANANAS), List.of(BREAD, CHEESE), List.of(KIWIS, PEANUTS),
+                List.of(SALAMI, SOJA), List.of(ZUCCHINI), List.of());
+        assertThat(repository.getRequestCount()).isEqualTo(3);
+
+        // an output-page across two batches
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 3));
+        assertThat(result.items()).containsExactly(CHEESE, KIWIS, PEANUTS);
+        assertThat(result.totalSize()).isEqualTo(TEST_ITEMS.size());
+        assertThat(repository.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testBatchSizePageRange() {
+        adapter.setBatchSize(4);
+        adapter.enableCache(10, 10);
+        var pages = adapter.findAndFilterPages(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 1, 3), 3);
+
+        assertThat(pages).extracting(PagedSearchResult::items).containsExactly(List.of(CHEESE, KIWIS, PEANUTS),
+                List.of(SALAMI, SOJA, ZUCCHINI), List.of());
+        assertThat(repository.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testTotalSize() {
+        adapter.enableCache(2, 5);
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(result.totalSize()).isEqualTo(9);
+        var requestCount = repository.getRequestCount();
+
+        // there is no page behind the reported total size, so it is not requested
+        result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 3, 4));
+        assertThat(result.items()).isEmpty();
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testPageRange() {
+        adapter.enableCache(5, 5);
+        var pages = adapter.findAndFilterPages(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 0, 4), 4);
+        var requestCount = repository.getRequestCount();
+
+        assertThat(pages).extracting(PagedSearchResult::page).containsExactly(0L, 1L, 2L, 3L);
+        assertThat(pages.get(0).items()).containsExactly(APPLES, BANANAS, BREAD, CHEESE);
+        assertThat(pages.get(1).items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(pages.get(2).items()).containsExactly(ZUCCHINI);
+        assertThat(pages.get(3).items()).isEmpty();
+        assertThat(requestCount).isEqualTo(3);
+
+        // the scroll-ids of all pages are cached
+        var result = adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        assertThat(result.items()).containsExactly(ZUCCHINI);
+        assertThat(repository.getRequestCount()).isEqualTo(requestCount);
+    }
+
+    @Test
+    void testAsyncRequests() {
+        // a slow, blocking repository: every request blocks only its own virtual thread
+        var slowAdapter = new GeneralStoreScrollIdAdapter(repository) {
+            @Override
+            protected IterativeSearchResult<Item, ScrollId> find(IterativeSearch<Search, ScrollId> search) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.find(search);
+            }
+        };
+        slowAdapter.enableCache(2, 5);
+
+        var results = new ArrayList<CompletableFuture<PagedSearchResult<Item>>>();
+        for (int i = 0; i < 200; i++) {
+            results.add(slowAdapter.findAndFilterAsync(new PagedSearch<>(new Search(null, Search.SortBy.NAME), i % 3, 4)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).join().page()).isEqualTo(i % 3);
+        }
+        assertThat(results.get(1).join().items()).containsExactly(KIWIS, PEANUTS, SALAMI, SOJA);
+        assertThat(results.get(2).join().items()).containsExactly(ZUCCHINI);
+    }
+
+    @Test
+    void testMetrics() {
+        adapter.enableCache(2, 5);
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        adapter.findAndFilter(new PagedSearch<>(new Search(null, Search.SortBy.NAME), 2, 4));
+        var metrics = adapter.metrics();
+        log.info(metrics.toString());
+
+        assertThat(metrics.upstreamCalls()).isEqualTo(repository.getRequestCount());
+        assertThat(metrics.inputPagesPerOutputPage().count()).isEqualTo(2);
+        // only the first request walks from page 0 to page 2
+        assertThat(metrics.walkDistance().count()).isEqualTo(1);
+        assertThat(metrics.walkDistance().max()).isEqualTo(2);
+        assertThat(adapter.cacheStats().get("scrollId").hitCount()).isPositive();
+    }
 }